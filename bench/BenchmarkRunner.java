@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * A small, dependency-free benchmark harness for the util collections
+ * and the AAC model. Each benchmark is warmed up, then timed over a
+ * number of iterations whose length is calibrated to a target time;
+ * the results are printed as a table and saved as JSON.
+ *
+ * Usage: java BenchmarkRunner [-o results.json] [-f filter] [-i iterations]
+ *        [-w warmupMillis] [-t iterationMillis] [--quick]
+ *
+ * (bench/run.sh compiles everything and runs this with the given options.)
+ */
+public class BenchmarkRunner {
+  // +-------------+-------------------------------------------------
+  // | Local Types |
+  // +-------------+
+
+  /**
+   * The code being measured.
+   */
+  @FunctionalInterface
+  interface Body {
+    /**
+     * Perform ops operations.
+     *
+     * @return a value computed from the work, so that it cannot be
+     *   optimized away.
+     */
+    long run(int ops) throws Exception;
+  } // interface Body
+
+  /**
+   * One benchmark: a name, its parameters, and a way to build the body
+   * (doing any expensive setup outside of the timed region).
+   */
+  static class Case {
+    final String name;
+    final String params;
+    final Callable<Body> setup;
+
+    Case(String name, String params, Callable<Body> setup) {
+      this.name = name;
+      this.params = params;
+      this.setup = setup;
+    } // Case(String, String, Callable)
+  } // class Case
+
+  /**
+   * The measurements for one case.
+   */
+  static class Result {
+    final Case benchmark;
+    final int opsPerIteration;
+    final double[] nanosPerOp;
+
+    Result(Case benchmark, int opsPerIteration, double[] nanosPerOp) {
+      this.benchmark = benchmark;
+      this.opsPerIteration = opsPerIteration;
+      this.nanosPerOp = nanosPerOp;
+    } // Result(Case, int, double[])
+
+    double mean() {
+      double sum = 0;
+      for (double x : this.nanosPerOp) {
+        sum += x;
+      } // for
+      return sum / this.nanosPerOp.length;
+    } // mean()
+
+    double stddev() {
+      double mean = mean();
+      double sum = 0;
+      for (double x : this.nanosPerOp) {
+        sum += (x - mean) * (x - mean);
+      } // for
+      return Math.sqrt(sum / Math.max(1, this.nanosPerOp.length - 1));
+    } // stddev()
+
+    double min() {
+      double min = Double.MAX_VALUE;
+      for (double x : this.nanosPerOp) {
+        min = Math.min(min, x);
+      } // for
+      return min;
+    } // min()
+  } // class Result
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where bodies deposit their results, so the JIT keeps the work.
+   */
+  static volatile long sink;
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  public static void main(String[] args) throws Exception {
+    String output = "bench-results.json";
+    String filter = "";
+    int iterations = 5;
+    long warmupMillis = 1000;
+    long iterationMillis = 500;
+    boolean quick = false;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "-o":
+          output = args[++i];
+          break;
+        case "-f":
+          filter = args[++i];
+          break;
+        case "-i":
+          iterations = Integer.parseInt(args[++i]);
+          break;
+        case "-w":
+          warmupMillis = Long.parseLong(args[++i]);
+          break;
+        case "-t":
+          iterationMillis = Long.parseLong(args[++i]);
+          break;
+        case "--quick":
+          quick = true;
+          iterations = 3;
+          warmupMillis = 200;
+          iterationMillis = 100;
+          break;
+        default:
+          System.err.println("Unknown option: " + args[i]);
+          System.exit(1);
+      } // switch
+    } // for
+
+    List<Case> cases = new ArrayList<>();
+    cases.addAll(CollectionBenchmarks.cases(quick));
+    cases.addAll(ModelBenchmarks.cases(quick));
+
+    List<Result> results = new ArrayList<>();
+    System.out.printf("%-40s %-28s %14s %12s%n", "benchmark", "params", "ns/op", "+/-");
+    for (Case c : cases) {
+      if (!(c.name + " " + c.params).contains(filter)) {
+        continue;
+      } // if
+      Result r = measure(c, iterations, warmupMillis, iterationMillis);
+      results.add(r);
+      System.out.printf(Locale.ROOT, "%-40s %-28s %14.1f %12.1f%n", c.name, c.params,
+          r.mean(), r.stddev());
+    } // for
+    writeJson(output, results);
+    System.out.println("Results saved to " + output);
+  } // main(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Warm up and time one case.
+   */
+  static Result measure(Case c, int iterations, long warmupMillis, long iterationMillis)
+      throws Exception {
+    Body body = c.setup.call();
+    // Find a batch size that takes about iterationMillis.
+    int ops = 1;
+    while (true) {
+      long elapsed = time(body, ops);
+      if (elapsed >= iterationMillis * 1_000_000L || ops >= (1 << 30)) {
+        break;
+      } // if
+      long scaled = (elapsed <= 0) ? ops * 16L
+          : ops * iterationMillis * 1_000_000L / elapsed + 1;
+      ops = (int) Math.min(1 << 30, Math.max(ops * 2L, Math.min(scaled, ops * 16L)));
+    } // while
+    long warmupEnd = System.nanoTime() + warmupMillis * 1_000_000L;
+    while (System.nanoTime() < warmupEnd) {
+      time(body, ops);
+    } // while
+    double[] nanosPerOp = new double[iterations];
+    for (int i = 0; i < iterations; i++) {
+      nanosPerOp[i] = (double) time(body, ops) / ops;
+    } // for
+    return new Result(c, ops, nanosPerOp);
+  } // measure(Case, int, long, long)
+
+  /**
+   * Time one batch of operations.
+   */
+  static long time(Body body, int ops) throws Exception {
+    long start = System.nanoTime();
+    sink += body.run(ops);
+    return System.nanoTime() - start;
+  } // time(Body, int)
+
+  /**
+   * Save the results as a JSON array.
+   */
+  static void writeJson(String filename, List<Result> results) throws IOException {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(filename)))) {
+      out.println("[");
+      for (int i = 0; i < results.size(); i++) {
+        Result r = results.get(i);
+        out.printf(Locale.ROOT,
+            "  {\"benchmark\": \"%s\", \"params\": \"%s\", \"unit\": \"ns/op\", "
+                + "\"mean\": %.3f, \"stddev\": %.3f, \"min\": %.3f, "
+                + "\"iterations\": %d, \"opsPerIteration\": %d}%s%n",
+            r.benchmark.name, r.benchmark.params, r.mean(), r.stddev(), r.min(),
+            r.nanosPerOp.length, r.opsPerIteration, (i < results.size() - 1) ? "," : "");
+      } // for
+      out.println("]");
+    } // try
+  } // writeJson(String, List)
+} // class BenchmarkRunner
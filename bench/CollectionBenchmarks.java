@@ -0,0 +1,311 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.ConcurrentAssociativeArray;
+import edu.grinnell.csc207.util.PersistentAssociativeArray;
+
+/**
+ * Benchmarks for the associative arrays in edu.grinnell.csc207.util.
+ */
+public class CollectionBenchmarks {
+  /**
+   * The map sizes we measure.
+   */
+  static final int[] SIZES = { 16, 256, 4096, 65536, 1 << 20 };
+
+  /**
+   * The map sizes we measure in quick mode.
+   */
+  static final int[] QUICK_SIZES = { 16, 4096, 65536 };
+
+  /**
+   * Build the list of collection benchmarks.
+   */
+  static List<BenchmarkRunner.Case> cases(boolean quick) {
+    List<BenchmarkRunner.Case> cases = new ArrayList<>();
+    for (int size : quick ? QUICK_SIZES : SIZES) {
+      String params = "size=" + size;
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.set(new)", params, () -> {
+        String[] keys = keys(size);
+        return (ops) -> {
+          // Fill fresh arrays, so each op adds a new key.
+          AssociativeArray<String, String> map = new AssociativeArray<>();
+          for (int i = 0, k = 0; i < ops; i++, k++) {
+            if (k == size) {
+              map = new AssociativeArray<>();
+              k = 0;
+            } // if
+            map.set(keys[k], keys[k]);
+          } // for
+          return map.size();
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.set(existing)", params, () -> {
+        String[] keys = shuffled(keys(size));
+        AssociativeArray<String, String> map = filled(keys);
+        return (ops) -> {
+          for (int i = 0; i < ops; i++) {
+            map.set(keys[i % size], keys[i % size]);
+          } // for
+          return map.size();
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.get", params, () -> {
+        String[] keys = keys(size);
+        AssociativeArray<String, String> map = filled(keys);
+        String[] probes = shuffled(keys);
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            sum += map.get(probes[i % size]).length();
+          } // for
+          return sum;
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.hasKey(miss)", params, () -> {
+        AssociativeArray<String, String> map = filled(keys(size));
+        String[] misses = shuffled(keys(size, "img/missing/"));
+        return (ops) -> {
+          long count = 0;
+          for (int i = 0; i < ops; i++) {
+            if (map.hasKey(misses[i % size])) {
+              count++;
+            } // if
+          } // for
+          return count;
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.remove+set", params, () -> {
+        String[] keys = shuffled(keys(size));
+        AssociativeArray<String, String> map = filled(keys);
+        return (ops) -> {
+          // Remove a key and put it back, so the size stays the same.
+          for (int i = 0; i < ops; i++) {
+            String key = keys[i % size];
+            map.remove(key);
+            map.set(key, key);
+          } // for
+          return map.size();
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.getKeys", params, () -> {
+        AssociativeArray<String, String> map = filled(keys(size));
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            // getKeys really returns an Object[], so don't let javac
+            // cast it to String[].
+            Object[] keys = map.getKeys();
+            sum += keys.length;
+          } // for
+          return sum;
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("AssociativeArray.forEach", params, () -> {
+        AssociativeArray<String, String> map = filled(keys(size));
+        long[] sum = new long[1];
+        return (ops) -> {
+          for (int i = 0; i < ops; i++) {
+            map.forEach((k, v) -> sum[0] += v.length());
+          } // for
+          return sum[0];
+        };
+      }));
+    } // for
+
+    // Read throughput of a shared ConcurrentAssociativeArray as the
+    // number of reader threads grows, with one thread writing. Each case
+    // first checks that the readers only ever see consistent versions.
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      int readers = threads;
+      cases.add(new BenchmarkRunner.Case("ConcurrentAssociativeArray.get",
+          "size=65536 readers=" + readers, () -> {
+            checkConcurrentReads(readers, quick ? 20000 : 200000);
+            return concurrentReads(65536, readers);
+          }));
+    } // for
+    return cases;
+  } // cases(boolean)
+
+  /**
+   * Build a body that splits its reads across some reader threads while
+   * another thread keeps updating the array. The time per op falls as
+   * reads scale with the number of cores.
+   */
+  static BenchmarkRunner.Body concurrentReads(int size, int readers) throws Exception {
+    String[] keys = keys(size);
+    ConcurrentAssociativeArray<String, String> map = new ConcurrentAssociativeArray<>();
+    for (String key : keys) {
+      map.set(key, key);
+    } // for
+    ExecutorService pool = Executors.newFixedThreadPool(readers + 1, (r) -> {
+      Thread t = new Thread(r);
+      t.setDaemon(true);
+      return t;
+    });
+    return (ops) -> {
+      CountDownLatch done = new CountDownLatch(readers);
+      Future<?> writer = pool.submit(() -> {
+        Random random = new Random(7);
+        while (done.getCount() > 0) {
+          String key = keys[random.nextInt(size)];
+          map.set(key, key);
+        } // while
+        return null;
+      });
+      List<Future<Long>> results = new ArrayList<>();
+      for (int t = 0; t < readers; t++) {
+        int offset = t * 7919;
+        results.add(pool.submit(() -> {
+          long sum = 0;
+          for (int i = 0; i < ops / readers; i++) {
+            sum += map.getOrDefault(keys[(offset + i) % size], "").length();
+          } // for
+          done.countDown();
+          return sum;
+        }));
+      } // for
+      long sum = 0;
+      for (Future<Long> result : results) {
+        sum += result.get();
+      } // for
+      writer.get();
+      return sum;
+    };
+  } // concurrentReads(int, int)
+
+  /**
+   * Check that readers of a ConcurrentAssociativeArray only ever see
+   * whole versions while a thread writes to it. The writer adds keys
+   * 0, 1, 2, ... in order, removing each once WINDOW newer keys have
+   * been added, so every version holds a run of consecutive keys, each
+   * mapped to its own name. Meanwhile, the readers check that every
+   * snapshot holds such a run, that its size() is the number of keys
+   * they see in it, that the runs never move backwards, and that each
+   * run reaches the last key the writer had finished adding.
+   *
+   * @throws java.util.concurrent.ExecutionException
+   *   Wrapping an IllegalStateException, if a reader sees an
+   *   inconsistent version.
+   */
+  static void checkConcurrentReads(int readers, int writes) throws Exception {
+    final int window = 256;
+    ConcurrentAssociativeArray<String, String> map = new ConcurrentAssociativeArray<>();
+    map.set("key-0", "key-0");
+    int[] written = new int[1]; // the newest key, once it has been set
+    ExecutorService pool = Executors.newFixedThreadPool(readers + 1);
+    try {
+      Future<?> writer = pool.submit(() -> {
+        for (int n = 1; n < writes; n++) {
+          map.set("key-" + n, "key-" + n);
+          if (n >= window) {
+            map.remove("key-" + (n - window));
+          } // if
+          synchronized (written) {
+            written[0] = n;
+          } // synchronized
+        } // for
+        return null;
+      });
+      List<Future<Long>> results = new ArrayList<>();
+      for (int t = 0; t < readers; t++) {
+        results.add(pool.submit(() -> {
+          long versions = 0;
+          int lastLow = 0;
+          do {
+            int newest;
+            synchronized (written) {
+              newest = written[0];
+            } // synchronized
+            PersistentAssociativeArray<String, String> version = map.snapshot();
+            Object[] keys = version.getKeys(); // really an Object[], whatever K is
+            if (keys.length != version.size()) {
+              throw new IllegalStateException("size() is " + version.size() + " but "
+                  + keys.length + " keys were seen");
+            } // if
+            int low = Integer.parseInt(((String) keys[0]).substring(4));
+            if (low < lastLow || keys.length > window + 1) {
+              throw new IllegalStateException("saw keys from key-" + low + " after key-"
+                  + lastLow + ", " + keys.length + " in all");
+            } // if
+            for (int i = 0; i < keys.length; i++) {
+              String expected = "key-" + (low + i);
+              if (!expected.equals(keys[i]) || !expected.equals(version.getOrDefault(expected, null))) {
+                throw new IllegalStateException("saw " + keys[i] + " where " + expected
+                    + " belongs");
+              } // if
+            } // for
+            if (low + keys.length - 1 < newest) {
+              throw new IllegalStateException("key-" + newest + " was set but the version ends at key-"
+                  + (low + keys.length - 1));
+            } // if
+            lastLow = low;
+            versions++;
+          } while (!writer.isDone());
+          return versions;
+        }));
+      } // for
+      writer.get();
+      for (Future<Long> result : results) {
+        result.get(); // rethrows what the reader found
+      } // for
+    } finally {
+      pool.shutdownNow();
+    } // try/finally
+    Object[] keys = map.getKeys(); // really an Object[], whatever K is
+    if (map.size() != window || keys.length != window) {
+      throw new IllegalStateException("ended with " + map.size() + " keys");
+    } // if
+  } // checkConcurrentReads(int, int)
+
+  /**
+   * Make some image-location-like keys.
+   */
+  static String[] keys(int count) {
+    return keys(count, "img/items/");
+  } // keys(int)
+
+  /**
+   * Make some image-location-like keys with the given prefix.
+   */
+  static String[] keys(int count, String prefix) {
+    String[] keys = new String[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = prefix + "icon-" + i + ".png";
+    } // for
+    return keys;
+  } // keys(int, String)
+
+  /**
+   * Return a copy of keys in a fixed pseudo-random order.
+   */
+  static String[] shuffled(String[] keys) {
+    String[] result = keys.clone();
+    Random random = new Random(42);
+    for (int i = result.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      String tmp = result[i];
+      result[i] = result[j];
+      result[j] = tmp;
+    } // for
+    return result;
+  } // shuffled(String[])
+
+  /**
+   * Build an associative array mapping each key to itself.
+   */
+  static AssociativeArray<String, String> filled(String[] keys) throws Exception {
+    AssociativeArray<String, String> map = new AssociativeArray<>();
+    for (String key : keys) {
+      map.set(key, key);
+    } // for
+    return map;
+  } // filled(String[])
+} // class CollectionBenchmarks
@@ -0,0 +1,156 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generates AAC mapping files of a given shape for the benchmarks. The
+ * output depends only on the arguments, so runs are reproducible.
+ *
+ * Usage: java MappingsGenerator categories itemsPerCategory file
+ */
+public class MappingsGenerator {
+  /**
+   * Some words to build item texts from.
+   */
+  static final String[] WORDS = { "apple", "ball", "cap", "dog", "eat", "french", "fries",
+      "go", "hamburger", "I", "juice", "kite", "look", "more", "no", "outside", "pizza",
+      "quiet", "rain", "boots", "sweater", "t", "shirt", "up", "very", "want", "yes" };
+
+  public static void main(String[] args) throws IOException {
+    write(Path.of(args[2]), Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+  } // main(String[])
+
+  /**
+   * Write a mapping file with the given number of categories, each with
+   * the given number of items.
+   */
+  static void write(Path file, int categories, int items) throws IOException {
+    Random random = new Random(categories * 31L + items);
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      for (int c = 0; c < categories; c++) {
+        writeCategory(out, random, c, items);
+      } // for
+    } // try
+  } // write(Path, int, int)
+
+  /**
+   * Write the same mappings as write, but with each category in its own
+   * file in dir (named so that they sort in category order).
+   */
+  static void writeDirectory(Path dir, int categories, int items) throws IOException {
+    Random random = new Random(categories * 31L + items);
+    for (int c = 0; c < categories; c++) {
+      Path file = dir.resolve(String.format("category-%06d.txt", c));
+      try (BufferedWriter out = Files.newBufferedWriter(file)) {
+        writeCategory(out, random, c, items);
+      } // try
+    } // for
+  } // writeDirectory(Path, int, int)
+
+  /**
+   * Write one category and its items.
+   */
+  static void writeCategory(BufferedWriter out, Random random, int c, int items)
+      throws IOException {
+    out.write(categoryImage(c) + " category " + c + "\n");
+    for (int i = 0; i < items; i++) {
+      out.write(">" + itemImage(c, i) + " " + WORDS[random.nextInt(WORDS.length)]
+          + " " + WORDS[random.nextInt(WORDS.length)] + "\n");
+    } // for
+  } // writeCategory(BufferedWriter, Random, int, int)
+
+  /**
+   * Write a mapping file with a single category that branches into the
+   * given number of subcategories at each level, down to the given depth
+   * (1 for no subcategories), with the given number of items in each of
+   * the deepest subcategories.
+   */
+  static void writeNested(Path file, int depth, int fanout, int items) throws IOException {
+    Random random = new Random(depth * 31L + fanout);
+    try (BufferedWriter out = Files.newBufferedWriter(file)) {
+      out.write(categoryImage(0) + " category 0\n");
+      writeLevel(out, random, "img/generated/nested", 1, depth, fanout, items);
+    } // try
+  } // writeNested(Path, int, int, int)
+
+  /**
+   * Write the items, or subcategories, at one level of writeNested.
+   */
+  static void writeLevel(BufferedWriter out, Random random, String prefix, int level, int depth,
+      int fanout, int items) throws IOException {
+    String marks = ">".repeat(level);
+    if (level == depth) {
+      for (int i = 0; i < items; i++) {
+        out.write(marks + prefix + "/item-" + i + ".png " + WORDS[random.nextInt(WORDS.length)]
+            + " " + WORDS[random.nextInt(WORDS.length)] + "\n");
+      } // for
+      return;
+    } // if
+    for (int s = 0; s < fanout; s++) {
+      out.write(marks + prefix + "-" + s + ".png level " + level + " " + s + "\n");
+      writeLevel(out, random, prefix + "-" + s, level + 1, depth, fanout, items);
+    } // for
+  } // writeLevel(BufferedWriter, Random, String, int, int, int, int)
+
+  /**
+   * Write a mapping file to a new temporary file that is deleted on exit.
+   */
+  static Path temp(int categories, int items) throws IOException {
+    Path file = Files.createTempFile("aac-" + categories + "x" + items + "-", ".txt");
+    file.toFile().deleteOnExit();
+    write(file, categories, items);
+    return file;
+  } // temp(int, int)
+
+  /**
+   * Write a nested mapping file (see writeNested) to a new temporary file
+   * that is deleted on exit.
+   */
+  static Path tempNested(int depth, int fanout, int items) throws IOException {
+    Path file = Files.createTempFile("aac-nested-" + depth + "x" + fanout + "-", ".txt");
+    file.toFile().deleteOnExit();
+    writeNested(file, depth, fanout, items);
+    return file;
+  } // tempNested(int, int, int)
+
+  /**
+   * Write a directory of per-category mapping files to a new temporary
+   * directory that is deleted on exit.
+   */
+  static Path tempDirectory(int categories, int items) throws IOException {
+    Path dir = Files.createTempDirectory("aac-" + categories + "x" + items + "-");
+    dir.toFile().deleteOnExit();
+    writeDirectory(dir, categories, items);
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach((file) -> file.toFile().deleteOnExit());
+    } // try
+    return dir;
+  } // tempDirectory(int, int)
+
+  /**
+   * The files in a generated directory, in the order AACMappings loads
+   * them.
+   */
+  static Path[] files(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.sorted().toArray(Path[]::new);
+    } // try
+  } // files(Path)
+
+  /**
+   * The image location of a generated category.
+   */
+  static String categoryImage(int category) {
+    return "img/generated/category-" + category + ".png";
+  } // categoryImage(int)
+
+  /**
+   * The image location of a generated item.
+   */
+  static String itemImage(int category, int item) {
+    return "img/generated/category-" + category + "/item-" + item + ".png";
+  } // itemImage(int, int)
+} // class MappingsGenerator
@@ -0,0 +1,310 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks for the AAC model: loading AACMappings from generated
+ * files and the calls the UI makes on each tap.
+ */
+public class ModelBenchmarks {
+  /**
+   * The (categories, items per category) shapes we load.
+   */
+  static final int[][] SHAPES = { { 10, 10 }, { 100, 100 }, { 1000, 100 }, { 100, 1000 } };
+
+  /**
+   * The shapes we load in quick mode.
+   */
+  static final int[][] QUICK_SHAPES = { { 10, 10 }, { 100, 100 } };
+
+  /**
+   * The number of images on one page of the AAC grid.
+   */
+  static final int PAGE = 9;
+
+  /**
+   * Build the list of model benchmarks.
+   */
+  static List<BenchmarkRunner.Case> cases(boolean quick) {
+    List<BenchmarkRunner.Case> cases = new ArrayList<>();
+    for (int[] shape : quick ? QUICK_SHAPES : SHAPES) {
+      int categories = shape[0];
+      int items = shape[1];
+      String params = "categories=" + categories + " items=" + items;
+      cases.add(new BenchmarkRunner.Case("AACMappings.<init>", params, () -> {
+        String file = MappingsGenerator.temp(categories, items).toString();
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            sum += new AACMappings(file).getImageLocs().length;
+          } // for
+          return sum;
+        };
+      }));
+      // Indexing only the category lines, loading items on demand.
+      cases.add(new BenchmarkRunner.Case("AACMappings.<init>(lazy)", params, () -> {
+        String file = MappingsGenerator.temp(categories, items).toString();
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            sum += new AACMappings(file, 8).getImageLocs().length;
+          } // for
+          return sum;
+        };
+      }));
+      // The same mappings split into one file per category, which are
+      // parsed in parallel.
+      cases.add(new BenchmarkRunner.Case("AACMappings.<init>(directory)", params, () -> {
+        String dir = MappingsGenerator.tempDirectory(categories, items).toString();
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            sum += new AACMappings(dir).getImageLocs().length;
+          } // for
+          return sum;
+        };
+      }));
+      // Just the parallel stage of a directory load, against the same
+      // files parsed one after another on this thread.
+      cases.add(new BenchmarkRunner.Case("MappingsParser.parseAll", params, () -> {
+        Path[] files = MappingsGenerator.files(MappingsGenerator.tempDirectory(categories, items));
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            String[] errors = new String[files.length];
+            long[] nanos = new long[files.length];
+            sum += MappingsParser.parseAll(files, errors, nanos).length;
+          } // for
+          return sum;
+        };
+      }));
+      cases.add(new BenchmarkRunner.Case("MappingsParser.parseAll(serial)", params, () -> {
+        Path[] files = MappingsGenerator.files(MappingsGenerator.tempDirectory(categories, items));
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            MappingsParser.Recording[] results = new MappingsParser.Recording[files.length];
+            for (int f = 0; f < files.length; f++) {
+              results[f] = new MappingsParser.Recording();
+              MappingsParser.parse(files[f], results[f]);
+            } // for
+            sum += results.length;
+          } // for
+          return sum;
+        };
+      }));
+    } // for
+
+    int categories = 100;
+    int items = quick ? 100 : 1000;
+    String params = "categories=" + categories + " items=" + items;
+    cases.add(new BenchmarkRunner.Case("AACMappings.tapSequence", params, () -> {
+      AACMappings mappings = load(categories, items);
+      return (ops) -> {
+        // Go home, open a category, and tap every item on its first page.
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          int c = i % categories;
+          mappings.reset();
+          sum += mappings.getImageLocs().length;
+          mappings.select(MappingsGenerator.categoryImage(c));
+          String[] locs = mappings.getImageLocs();
+          for (int j = 0; j < PAGE && j < locs.length; j++) {
+            sum += mappings.select(locs[j]).length();
+          } // for
+        } // for
+        return sum;
+      };
+    }));
+    // Open subcategories down to the deepest level, tap an item there and
+    // go back up, for files nested more and more deeply.
+    for (int depth : quick ? new int[] { 2, 4 } : new int[] { 2, 4, 6 }) {
+      int fanout = 4;
+      cases.add(new BenchmarkRunner.Case("AACMappings.tapSequence(nested)",
+          "depth=" + depth + " fanout=" + fanout, () -> {
+        AACMappings mappings = new AACMappings(
+            MappingsGenerator.tempNested(depth, fanout, PAGE).toString());
+        return (ops) -> {
+          long sum = 0;
+          for (int i = 0; i < ops; i++) {
+            mappings.reset();
+            mappings.select(MappingsGenerator.categoryImage(0));
+            for (int level = 1; level < depth; level++) {
+              String[] locs = mappings.getImageLocs();
+              mappings.select(locs[(i >> level) % locs.length]);
+            } // for
+            String[] locs = mappings.getImageLocs();
+            sum += mappings.select(locs[i % locs.length]).length();
+            while (mappings.back()) {
+              sum++;
+            } // while
+          } // for
+          return sum;
+        };
+      }));
+    } // for
+    cases.add(new BenchmarkRunner.Case("AACMappings.select(item)", params, () -> {
+      AACMappings mappings = load(categories, items);
+      mappings.select(MappingsGenerator.categoryImage(0));
+      String[] locs = CollectionBenchmarks.shuffled(mappings.getImageLocs());
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.select(locs[i % locs.length]).length();
+        } // for
+        return sum;
+      };
+    }));
+    cases.add(new BenchmarkRunner.Case("AACMappings.getImageLocs", params, () -> {
+      AACMappings mappings = load(categories, items);
+      mappings.select(MappingsGenerator.categoryImage(0));
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.getImageLocs().length;
+        } // for
+        return sum;
+      };
+    }));
+    // What each background save (MappingsSaver.save) costs the event
+    // thread: a full copy of the mappings.
+    cases.add(new BenchmarkRunner.Case("AACMappings.snapshot", params, () -> {
+      AACMappings mappings = load(categories, items);
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.snapshot().getImageLocs().length;
+        } // for
+        return sum;
+      };
+    }));
+    cases.add(new BenchmarkRunner.Case("AACMappings.search(prefix)", params, () -> {
+      AACMappings mappings = load(categories, items);
+      String[] queries = queries(false);
+      mappings.search(queries[0], PAGE, 0); // build the index
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.search(queries[i % queries.length], PAGE, 0).length;
+        } // for
+        return sum;
+      };
+    }));
+    cases.add(new BenchmarkRunner.Case("AACMappings.search(fuzzy)", params, () -> {
+      AACMappings mappings = load(categories, items);
+      String[] queries = queries(true);
+      mappings.search(queries[0], PAGE, 2); // build the index
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.search(queries[i % queries.length], PAGE, 2).length;
+        } // for
+        return sum;
+      };
+    }));
+    cases.add(new BenchmarkRunner.Case("AACMappings.findByText", params, () -> {
+      AACMappings mappings = load(categories, items);
+      String[] texts = texts(mappings);
+      mappings.findByText(texts[0]); // build the index
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.findByText(texts[i % texts.length]).length;
+        } // for
+        return sum;
+      };
+    }));
+    cases.add(new BenchmarkRunner.Case("AACMappings.findByText(scan)", params, () -> {
+      AACMappings mappings = load(categories, items);
+      String[] texts = texts(mappings);
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += scan(mappings, texts[i % texts.length]);
+        } // for
+        return sum;
+      };
+    }));
+    cases.add(new BenchmarkRunner.Case("AACMappings.getDuplicates", params, () -> {
+      AACMappings mappings = load(categories, items);
+      mappings.getDuplicates(); // build the index
+      return (ops) -> {
+        long sum = 0;
+        for (int i = 0; i < ops; i++) {
+          sum += mappings.getDuplicates().size();
+        } // for
+        return sum;
+      };
+    }));
+    return cases;
+  } // cases(boolean)
+
+  /**
+   * The texts of the first page of each category, to look up.
+   */
+  static String[] texts(AACMappings mappings) {
+    List<String> texts = new ArrayList<>();
+    mappings.reset();
+    for (String category : mappings.getImageLocs()) {
+      mappings.reset();
+      mappings.select(category);
+      String[] locs = mappings.getImageLocs();
+      for (int j = 0; j < PAGE && j < locs.length; j++) {
+        texts.add(mappings.select(locs[j]));
+      } // for
+    } // for
+    mappings.reset();
+    return CollectionBenchmarks.shuffled(texts.toArray(new String[0]));
+  } // texts(AACMappings)
+
+  /**
+   * Find the items that speak a text the way we would without an index:
+   * open every category and select every item in it.
+   *
+   * @return the number of items found
+   */
+  static int scan(AACMappings mappings, String text) {
+    int found = 0;
+    mappings.reset();
+    for (String category : mappings.getImageLocs()) {
+      mappings.reset();
+      mappings.select(category);
+      for (String loc : mappings.getImageLocs()) {
+        if (mappings.select(loc).equalsIgnoreCase(text)) {
+          found++;
+        } // if
+      } // for
+    } // for
+    mappings.reset();
+    return found;
+  } // scan(AACMappings, String)
+
+  /**
+   * Queries for the search benchmarks: prefixes of the generated words
+   * (one to all of their letters), or, with typos, the words with two
+   * letters swapped.
+   */
+  static String[] queries(boolean typos) {
+    List<String> queries = new ArrayList<>();
+    for (String word : MappingsGenerator.WORDS) {
+      if (typos) {
+        if (word.length() > 2) {
+          queries.add(word.charAt(1) + "" + word.charAt(0) + word.substring(2));
+        } // if
+      } else {
+        for (int end = 1; end <= word.length(); end++) {
+          queries.add(word.substring(0, end));
+        } // for
+      } // if/else
+    } // for
+    return queries.toArray(new String[0]);
+  } // queries(boolean)
+
+  /**
+   * Load mappings of the given shape from a generated file.
+   */
+  static AACMappings load(int categories, int items) throws Exception {
+    Path file = MappingsGenerator.temp(categories, items);
+    return new AACMappings(file.toString());
+  } // load(int, int)
+} // class ModelBenchmarks
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Compile the sources and the benchmarks, then run the benchmarks.
+# Options are passed on to BenchmarkRunner; by default the results are
+# saved to bench-results.json. For example:
+#
+#   bench/run.sh                      # everything
+#   bench/run.sh --quick -f AACMappings -o quick.json
+set -e
+cd "$(dirname "$0")/.."
+rm -rf build/bench
+mkdir -p build/bench
+javac -d build/bench -sourcepath src bench/*.java
+exec java -cp build/bench BenchmarkRunner "$@"
@@ -2,9 +2,12 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
+import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
@@ -15,9 +18,15 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 import javax.speech.Central;
 import javax.speech.synthesis.Synthesizer;
@@ -33,14 +42,46 @@ import javax.speech.synthesis.SynthesizerModeDesc;
 public class AAC implements ActionListener {
 
 	private JFrame frame;
-	private static Synthesizer synthesizer;
+	// Completes once the synthesizer has been allocated (see main)
+	private static CompletableFuture<Synthesizer> synthesizer;
+	// When the program started, for the startup timeline
+	private static final long STARTED = System.nanoTime();
 	private int startIndex;
 	private int endIndex;
 	private static final int NUM_ACROSS = 3;
 	private static final int NUM_DOWN = 3;
+	// Room left around the grid for the arrows (at the sides) and the title,
+	// buttons and credits (above and below)
+	private static final int ARROW_WIDTH = 110;
+	private static final int CHROME_HEIGHT = 260;
+	// Cell sizes are rounded down to a multiple of this, so that resizing the
+	// window a little does not fill the icon cache with near-duplicates
+	private static final int CELL_STEP = 16;
 	private String[] images;
 	private AACPage page;
 	private Scanner input;
+	private MappingsSaver saver;
+	// Speaks on its own thread; a new tap cuts off what is being said
+	private SpeechQueue speech;
+	// Audio for the items' text, rendered once so taps can play it
+	private AudioClipCache clips = new AudioClipCache(Paths.get(".aac-audio"));
+	private IconCache icons = new IconCache();
+	private IconPrefetcher prefetcher = new IconPrefetcher(icons, 2);
+	// The parts of the window that change as the user moves around
+	private JLabel categoryLabel;
+	private JButton backArrow;
+	private JButton nextArrow;
+	private JPanel grid;
+	private JButton[] cells = new JButton[0];
+	private int gridAcross;
+	// Sentence strip: in strip mode, tapped items are collected here and
+	// spoken together as one phrase
+	private JCheckBox stripMode;
+	private JLabel stripLabel;
+	private ArrayList<String> strip = new ArrayList<>();
+	// Search: while there is a query, the grid shows its best matches
+	private JTextField searchField;
+	private SearchIndex.Hit[] results;
 
 	/**
 	 * Creates the AAC display for the file provided
@@ -49,127 +90,437 @@ public class AAC implements ActionListener {
 	 *                 will be in the AAC
 	 */
 	public AAC(String filename) {
-		this.page = new AACCategory("test");
-		// this.page = new AACMappings(filename);
+		// Loads while the synthesizer starts up on its own thread
+		this.page = new AACMappings(filename);
+		timeline("mappings loaded");
 		this.images = this.page.getImageLocs();
 		this.startIndex = 0;
 		this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
 		frame = new JFrame();
 		frame.setPreferredSize(new Dimension(500, 500));
 		loadImages(NUM_ACROSS, NUM_DOWN);
+		if (synthesizer != null) {
+			this.speech = new SpeechQueue(synthesizer, this.clips, true);
+			prerender();
+			synthesizer.thenRun(() -> timeline("speech ready, " + speech.getQueueDepth() + " waiting"));
+		}
+		if (this.page instanceof AACMappings) {
+			// Saves are written in the background, and every edit is
+			// journaled next to the mappings file as it is made
+			this.saver = new MappingsSaver(Paths.get("AACMappingsNew.txt"));
+			((AACMappings) this.page).enableJournal();
+		}
+		frame.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent e) {
+				if (speech != null) {
+					speech.cancel();
+					System.out.println(speech);
+					System.out.println(clips);
+				}
+				// let the last save and compaction finish before the window closes
+				if (saver != null) {
+					saver.close();
+					((AACMappings) page).closeJournal();
+				}
+			}
+		});
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.pack();
 		frame.setVisible(true);
+		timeline("window shown");
 		input = new Scanner(System.in);
 	}
 
 	/**
-	 * Loads the images in the screen in a width by length grid
+	 * Loads the images in the screen in a width by length grid. The
+	 * window's components are built the first time; after that, only
+	 * the icons, action commands and category name change, unless the
+	 * grid dimensions change, in which case the grid is rebuilt.
 	 * 
 	 * @param width  the number of images across to display
 	 * @param length the number of images down to display
 	 */
 	public void loadImages(int width, int length) {
+		if (this.categoryLabel == null) {
+			buildFrame();
+		}
+		if (this.cells.length != width * length || this.gridAcross != width) {
+			buildGrid(width, length);
+		}
+
+		String category = "Home Page";
+		if (this.results != null) {
+			category = "Search";
+		} else if (!this.page.getCategory().equals("")) {
+			// the innermost of the subcategories selected, if any
+			category = this.page.getCategory();
+			category = category.substring(category.lastIndexOf(AACMappings.PATH_SEPARATOR) + 1);
+		}
+		this.categoryLabel.setText(category);
+		this.stripLabel.setText(this.strip.isEmpty() ? " " : String.join(" ", this.strip));
+
+		// The arrows keep their place (so the grid never moves) but are
+		// only shown when there is a page to go to
+		showArrow(this.backArrow, "img/back-to.png", startIndex > 0);
+		showArrow(this.nextArrow, "img/next.png", endIndex < images.length);
+
+		// swap in the images
+		Dimension cell = cellSize(width, length);
+		int currImage = startIndex;
+		for (JButton button : this.cells) {
+			if (currImage < this.images.length) {
+				button.setIcon(icons.get(images[currImage], cell.width, cell.height));
+				// a search result is found again by its place in the results,
+				// since two results may share an image
+				button.setActionCommand(this.results != null ? String.valueOf(currImage) : images[currImage]);
+				button.setVisible(true);
+				currImage++;
+			} else {
+				button.setVisible(false);
+			}
+		}
+		// leave the focus in the search box while the user types
+		if (this.searchField == null || !this.searchField.isFocusOwner()) {
+			frame.getContentPane().requestFocusInWindow();
+		}
+		prefetch(cell);
+	}
+
+	/**
+	 * Builds the parts of the window that do not depend on the grid: the
+	 * category name, the home/up/save/add buttons, the arrows and the credits
+	 */
+	private void buildFrame() {
 		Container pane = frame.getContentPane();
-		pane.removeAll();
 
 		// add options to go to home screen
 		JPanel topPanel = new JPanel();
 		topPanel.setLayout(new GridBagLayout());
 		GridBagConstraints c = new GridBagConstraints();
-		String category = "Home Page";
-		if (!this.page.getCategory().equals("")) {
-			category = this.page.getCategory();
-		}
 		c.gridx = 0;
 		c.gridy = 0;
-		JLabel cat = new JLabel(category);
-		cat.setFont(new Font("Serif", Font.PLAIN, 36));
-		topPanel.add(cat, c);
+		this.categoryLabel = new JLabel("Home Page");
+		this.categoryLabel.setFont(new Font("Serif", Font.PLAIN, 36));
+		topPanel.add(this.categoryLabel, c);
 		JPanel panel1 = new JPanel();
-		panel1.setLayout(new GridLayout(1, 3));
+		panel1.setLayout(new GridLayout(1, 4));
 		if (this.page instanceof AACMappings) {
-			JButton home = new JButton(new ImageIcon("img/home.png"));
+			JButton home = new JButton(icons.get("img/home.png"));
 			home.setActionCommand("");
 			home.addActionListener(this);
 			panel1.add(home);
-			JButton save = new JButton(new ImageIcon("img/save.png"));
+			JButton up = new JButton("Up");
+			up.setActionCommand("up");
+			up.addActionListener(this);
+			panel1.add(up);
+			JButton save = new JButton(icons.get("img/save.png"));
 			save.setActionCommand("save");
 			save.addActionListener(this);
 			panel1.add(save);
 		}
-		JButton add = new JButton(new ImageIcon("img/plus.png"));
+		JButton add = new JButton(icons.get("img/plus.png"));
 		add.setActionCommand("add");
 		add.addActionListener(this);
 		panel1.add(add);
 		c.gridx = 0;
 		c.gridy = 1;
 		topPanel.add(panel1, c);
-		pane.add(topPanel, BorderLayout.PAGE_START);
 
-		// if on page 2+, add back button
-		if (startIndex > 0) {
-			JButton backArrow = new JButton(new ImageIcon("img/back-to.png"));
-			backArrow.setActionCommand("back");
-			backArrow.addActionListener(this);
-			pane.add(backArrow, BorderLayout.LINE_START);
-		}
+		// the sentence strip, with buttons to speak and clear it
+		JPanel stripPanel = new JPanel();
+		this.stripMode = new JCheckBox("Sentence strip");
+		stripPanel.add(this.stripMode);
+		this.stripLabel = new JLabel(" ");
+		this.stripLabel.setFont(new Font("Serif", Font.PLAIN, 18));
+		stripPanel.add(this.stripLabel);
+		JButton speak = new JButton("Speak");
+		speak.setActionCommand("speak");
+		speak.addActionListener(this);
+		stripPanel.add(speak);
+		JButton clear = new JButton("Clear");
+		clear.setActionCommand("clear");
+		clear.addActionListener(this);
+		stripPanel.add(clear);
+		c.gridx = 0;
+		c.gridy = 2;
+		topPanel.add(stripPanel, c);
 
-		// add images
-		JPanel panel = new JPanel();
-		panel.setLayout(new GridLayout(width, length));
-		int currImage = startIndex;
-		for (int y = 0; y < length; y++) {
-			for (int x = 0; x < width; x++) {
-				if (currImage < this.images.length) {
-					ImageIcon img = new ImageIcon(images[currImage]);
-					JButton button = new JButton(img);
-					button.setActionCommand(images[currImage]);
-					button.addActionListener(this);
-					panel.add(button);
-					currImage++;
+		// search every category as the user types
+		if (this.page instanceof AACMappings) {
+			JPanel searchPanel = new JPanel();
+			searchPanel.add(new JLabel("Search"));
+			this.searchField = new JTextField(20);
+			this.searchField.getDocument().addDocumentListener(new DocumentListener() {
+				public void insertUpdate(DocumentEvent e) {
+					search(searchField.getText());
+				}
 
+				public void removeUpdate(DocumentEvent e) {
+					search(searchField.getText());
 				}
-			}
-		}
-		pane.add(panel, BorderLayout.CENTER);
 
-		// if have later pages, add next button
-		if (endIndex < images.length) {
-			JButton nextArrow = new JButton(new ImageIcon("img/next.png"));
-			nextArrow.setActionCommand("next");
-			nextArrow.addActionListener(this);
-			pane.add(nextArrow, BorderLayout.LINE_END);
+				public void changedUpdate(DocumentEvent e) {
+				}
+			});
+			searchPanel.add(this.searchField);
+			c.gridx = 0;
+			c.gridy = 3;
+			topPanel.add(searchPanel, c);
 		}
+		pane.add(topPanel, BorderLayout.PAGE_START);
+
+		// back and next buttons, for categories with more than one page
+		this.backArrow = new JButton(icons.get("img/back-to.png"));
+		this.backArrow.setActionCommand("back");
+		this.backArrow.addActionListener(this);
+		this.backArrow.setPreferredSize(this.backArrow.getPreferredSize());
+		pane.add(this.backArrow, BorderLayout.LINE_START);
+		this.nextArrow = new JButton(icons.get("img/next.png"));
+		this.nextArrow.setActionCommand("next");
+		this.nextArrow.addActionListener(this);
+		this.nextArrow.setPreferredSize(this.nextArrow.getPreferredSize());
+		pane.add(this.nextArrow, BorderLayout.LINE_END);
 
 		JLabel ack = new JLabel("All provided icons are from icons8: icons8.com");
 		pane.add(ack, BorderLayout.PAGE_END);
+	}
+
+	/**
+	 * Builds (or rebuilds) the width by length grid of image buttons
+	 * 
+	 * @param width  the number of images across
+	 * @param length the number of images down
+	 */
+	private void buildGrid(int width, int length) {
+		Container pane = frame.getContentPane();
+		if (this.grid != null) {
+			pane.remove(this.grid);
+		}
+		this.grid = new JPanel();
+		this.grid.setLayout(new GridLayout(width, length));
+		this.cells = new JButton[width * length];
+		for (int i = 0; i < this.cells.length; i++) {
+			this.cells[i] = new JButton();
+			this.cells[i].addActionListener(this);
+			this.grid.add(this.cells[i]);
+		}
+		this.gridAcross = width;
+		pane.add(this.grid, BorderLayout.CENTER);
 		pane.revalidate();
-		pane.requestFocusInWindow();
 	}
 
-	public static void main(String[] args) {
+	/**
+	 * Shows or hides one of the arrow buttons without changing its size
+	 * 
+	 * @param arrow the button
+	 * @param image the location of its image
+	 * @param show  whether to show it
+	 */
+	private void showArrow(JButton arrow, String image, boolean show) {
+		arrow.setIcon(show ? icons.get(image) : null);
+		arrow.setEnabled(show);
+		arrow.setBorderPainted(show);
+		arrow.setContentAreaFilled(show);
+	}
 
-		try {
-			// Set property as Kevin Dictionary
-			System.setProperty("freetts.voices", "com.sun.speech.freetts.en.us" + ".cmu_us_kal.KevinVoiceDirectory");
+	/**
+	 * Shows the best matches for a query in the grid, allowing a typo or
+	 * two, or (for an empty query) goes back to the current page
+	 * 
+	 * @param query what the user has typed
+	 */
+	private void search(String query) {
+		if (query.trim().isEmpty()) {
+			this.results = null;
+			this.images = this.page.getImageLocs();
+		} else {
+			this.results = ((AACMappings) this.page).search(query, NUM_ACROSS * NUM_DOWN, 2);
+			this.images = new String[this.results.length];
+			for (int i = 0; i < this.results.length; i++) {
+				this.images[i] = this.results[i].imageLoc;
+			}
+		}
+		this.startIndex = 0;
+		this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		loadImages(NUM_ACROSS, NUM_DOWN);
+	}
 
-			// Register Engine
-			Central.registerEngineCentral("com.sun.speech.freetts" + ".jsapi.FreeTTSEngineCentral");
-			synthesizer = Central.createSynthesizer(new SynthesizerModeDesc(Locale.US));
+	/**
+	 * Opens a search result: goes to its category and, for an item, speaks
+	 * it (or adds it to the sentence strip)
+	 * 
+	 * @param index the result's place in the results
+	 */
+	private void openResult(int index) {
+		SearchIndex.Hit hit = this.results[index];
+		this.searchField.setText(""); // ends the search
+		AACMappings mappings = (AACMappings) this.page;
+		mappings.open(hit.category);
+		String toSpeak = mappings.select(hit.imageLoc);
+		// categories and subcategories are opened rather than spoken
+		if (mappings.getCategory().equals(hit.category)) {
+			if (this.stripMode.isSelected()) {
+				this.strip.add(toSpeak);
+			} else {
+				speak(toSpeak, "word");
+			}
+		}
+		this.images = this.page.getImageLocs();
+		this.startIndex = 0;
+		this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+	}
 
-			// Allocate synthesizer
-			synthesizer.allocate();
+	/**
+	 * Speaks some text in the background and, once it has been said, logs
+	 * how long it took to start and to finish, so that speaking a whole
+	 * sentence strip can be compared with speaking word by word
+	 * 
+	 * @param text the text to speak
+	 * @param kind what the text is (e.g., a word), for the log
+	 */
+	private void speak(String text, String kind) {
+		if (this.speech == null) {
+			System.err.println("Error speaking: no synthesizer");
+			return;
+		}
+		long requested = System.nanoTime();
+		this.speech.speak(text).thenAccept((firstAudio) -> {
+			double done = (System.nanoTime() - requested) / 1000000.0;
+			System.out.printf("spoke %s \"%s\": first audio %.1f ms, done %.1f ms%n", kind, text,
+					firstAudio / 1000000.0, done);
+		});
+	}
 
-			// Resume Synthesizer
-			synthesizer.resume();
+	/**
+	 * Starts rendering the audio for every item's text in the background,
+	 * so that taps can play it instead of waiting for the synthesizer
+	 */
+	private void prerender() {
+		ArrayList<String> texts = new ArrayList<>();
+		if (this.page instanceof AACMappings) {
+			((AACMappings) this.page).forEachCategory((imageLoc, category) -> {
+				category.forEachNested((path, image, text, depth, isCategory) -> {
+					if (!isCategory) {
+						texts.add(text);
+					}
+				});
+			});
+		} else if (this.page instanceof AACCategory) {
+			((AACCategory) this.page).forEachItem((image, text) -> texts.add(text));
+		}
+		this.clips.prerender(texts);
+	}
 
-		} catch (Exception e) {
-			e.printStackTrace();
+	/**
+	 * Starts decoding, in the background, the icons the user is likely to
+	 * need next: the next and previous pages of the current category, and
+	 * on the home page, the first page of each category. Replaces whatever
+	 * was being prefetched for the previous screen.
+	 * 
+	 * @param cell the size of a grid cell
+	 */
+	private void prefetch(Dimension cell) {
+		int pageSize = NUM_ACROSS * NUM_DOWN;
+		ArrayList<String> wanted = new ArrayList<String>();
+		for (int i = endIndex; i < endIndex + pageSize && i < images.length; i++) {
+			wanted.add(images[i]);
+		}
+		for (int i = Math.max(0, startIndex - pageSize); i < startIndex; i++) {
+			wanted.add(images[i]);
 		}
+		if (this.page instanceof AACMappings && this.page.getCategory().equals("")) {
+			for (String category : images) {
+				for (String image : ((AACMappings) this.page).peekImageLocs(category, pageSize)) {
+					wanted.add(image);
+				}
+			}
+		}
+		prefetcher.prefetch(wanted.toArray(new String[0]), cell.width, cell.height);
+	}
+
+	/**
+	 * Finds the size of one cell of a width by length grid of images, from
+	 * the size of the grid (or, before it has been laid out, an estimate
+	 * from the size of the window)
+	 * 
+	 * @param width  the number of images across
+	 * @param length the number of images down
+	 * @return the size of a cell
+	 */
+	private Dimension cellSize(int width, int length) {
+		int w;
+		int h;
+		if (this.grid != null && this.grid.getWidth() > 0) {
+			w = this.grid.getWidth() / width;
+			h = this.grid.getHeight() / length;
+		} else {
+			Dimension size = frame.getPreferredSize();
+			w = (size.width - 2 * ARROW_WIDTH) / width;
+			h = (size.height - CHROME_HEIGHT) / length;
+		}
+		return new Dimension(Math.max(CELL_STEP, w / CELL_STEP * CELL_STEP),
+				Math.max(CELL_STEP, h / CELL_STEP * CELL_STEP));
+	}
+
+	/**
+	 * Starts the AAC. The synthesizer (whose voice takes longest to load)
+	 * is allocated on a background thread while the mappings are loaded
+	 * and the window is shown; taps made before it is ready are spoken
+	 * once it is.
+	 */
+	public static void main(String[] args) {
+		timeline("starting");
+		synthesizer = startSynthesizer();
 		AAC aac = new AAC("AACMappings.txt");
 	}
 
+	/**
+	 * Registers, allocates and resumes the FreeTTS synthesizer on a
+	 * background thread
+	 * 
+	 * @return a future that completes with the synthesizer once it is
+	 *         ready to speak
+	 */
+	private static CompletableFuture<Synthesizer> startSynthesizer() {
+		CompletableFuture<Synthesizer> ready = new CompletableFuture<>();
+		Thread starter = new Thread(() -> {
+			try {
+				// Set property as Kevin Dictionary
+				System.setProperty("freetts.voices", "com.sun.speech.freetts.en.us" + ".cmu_us_kal.KevinVoiceDirectory");
+
+				// Register Engine
+				Central.registerEngineCentral("com.sun.speech.freetts" + ".jsapi.FreeTTSEngineCentral");
+				Synthesizer synth = Central.createSynthesizer(new SynthesizerModeDesc(Locale.US));
+				timeline("synthesizer created");
+
+				// Allocate synthesizer (this loads the voice)
+				synth.allocate();
+				timeline("synthesizer allocated");
+
+				// Resume Synthesizer
+				synth.resume();
+				ready.complete(synth);
+			} catch (Exception e) {
+				e.printStackTrace();
+				ready.completeExceptionally(e);
+			}
+		}, "speech-startup");
+		starter.setDaemon(true);
+		starter.start();
+		return ready;
+	}
+
+	/**
+	 * Logs how long after startup a stage was reached, and on which thread
+	 * 
+	 * @param stage what was reached
+	 */
+	private static void timeline(String stage) {
+		double ms = (System.nanoTime() - STARTED) / 1000000.0;
+		System.out.printf("startup %8.1f ms  %-24s [%s]%n", ms, stage, Thread.currentThread().getName());
+	}
+
 	/**
 	 * Responds to the click of a button. If the button is a category or action
 	 * (e.g. home, next), it updates the screen. If the button is an image within
@@ -184,11 +535,24 @@ public class AAC implements ActionListener {
 			this.startIndex += NUM_ACROSS * NUM_DOWN;
 			this.endIndex = Math.min(endIndex + NUM_ACROSS * NUM_DOWN, this.images.length);
 		} else if (actionCommand.equals("save") && this.page instanceof AACMappings) {
-			((AACMappings) this.page).writeToFile("AACMappingsNew.txt");
+			if (this.searchField != null) {
+				this.searchField.setText(""); // ends any search
+			}
+			this.saver.save((AACMappings) this.page);
 			this.images = this.page.getImageLocs();
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		} else if (actionCommand.equals("speak")) {
+			if (!this.strip.isEmpty()) {
+				speak(String.join(" ", this.strip), "strip of " + this.strip.size());
+				this.strip.clear();
+			}
+		} else if (actionCommand.equals("clear")) {
+			this.strip.clear();
 		} else if (actionCommand.equals("add")) {
+			if (this.searchField != null) {
+				this.searchField.setText(""); // ends any search
+			}
 			JFileChooser chooser = new JFileChooser();
 			int returnVal = chooser.showOpenDialog(frame);
 			String imageLoc = "";
@@ -204,23 +568,36 @@ public class AAC implements ActionListener {
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
 		} else if (actionCommand.equals("") && this.page instanceof AACMappings) {
+			if (this.searchField != null) {
+				this.searchField.setText(""); // ends any search
+			}
 			((AACMappings) this.page).reset();
 			this.images = this.page.getImageLocs();
 			this.startIndex = 0;
 			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		} else if (actionCommand.equals("up") && this.page instanceof AACMappings) {
+			if (this.searchField != null) {
+				this.searchField.setText(""); // ends any search
+			}
+			((AACMappings) this.page).back();
+			this.images = this.page.getImageLocs();
+			this.startIndex = 0;
+			this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
+		} else if (this.results != null) {
+			openResult(Integer.parseInt(actionCommand));
 		} else {
-			if (this.page.getCategory().equals("")) {
-				this.page.select(actionCommand);
+			String category = this.page.getCategory();
+			String toSpeak = this.page.select(actionCommand);
+			if (!this.page.getCategory().equals(category)) {
+				// a category or subcategory was opened
 				this.images = this.page.getImageLocs();
 				this.startIndex = 0;
 				this.endIndex = Math.min(NUM_ACROSS * NUM_DOWN, this.images.length);
 			} else {
-				try {
-					String toSpeak = this.page.select(actionCommand);
-					synthesizer.speakPlainText(toSpeak, null);
-					synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
-				} catch (Exception e1) {
-					e1.printStackTrace();
+				if (this.stripMode.isSelected()) {
+					this.strip.add(toSpeak);
+				} else {
+					speak(toSpeak, "word");
 				}
 			}
 		}
@@ -1,4 +1,5 @@
 import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
 import edu.grinnell.csc207.util.*;
 
 /**
@@ -18,19 +19,65 @@ public class AACCategory implements AACPage {
     private String name; // The name of the category
 
     /**
-     * The mappings from image locations to text for this category.
+     * The table that interns image locations as ids. It may be shared
+     * with other categories (see AACMappings).
      */
-    private AssociativeArray<String, String> items; // Map of image locations to text
+    private SymbolTable symbols;
 
+    /**
+     * The mappings from image location ids to text for this category.
+     */
+    private IntAssociativeArray<String> items; // Map of image locations to text
+
+    /**
+     * The items that are subcategories, by the id of their image
+     * location, or null if there are none. Each has an entry in items too,
+     * whose text is its name.
+     */
+    private IntAssociativeArray<AACCategory> subcategories;
+
+    /**
+     * The category this is a subcategory of, or null.
+     */
+    private AACCategory parent;
+
+	/**
+	 * Receives the items of a category and of its subcategories.
+	 */
+	interface NestedItemConsumer {
+		/**
+		 * Called for each item
+		 * @param path the image locations of the subcategories the item
+		 * is in, separated by AACMappings.PATH_SEPARATOR, or the empty
+		 * string for an item of the category itself
+		 * @param imageLoc the location of the item's image
+		 * @param text the item's text (for a subcategory, its name)
+		 * @param depth 1 for an item of the category itself, 2 for an item
+		 * of one of its subcategories, and so on
+		 * @param isCategory whether the item is a subcategory
+		 */
+		void accept(String path, String imageLoc, String text, int depth, boolean isCategory);
+	} //NestedItemConsumer
 	
 	/**
 	 * Creates a new empty category with the given name
 	 * @param name the name of the category
 	 */
 	public AACCategory(String name) {
-		this.name = name;
-        this.items = new AssociativeArray<>();
+		this(name, new SymbolTable());
 	} // AACCategory(String)
+
+	/**
+	 * Creates a new empty category with the given name that interns its
+	 * image locations in the given symbol table
+	 * @param name the name of the category
+	 * @param symbols the table of image location ids
+	 */
+	public AACCategory(String name, SymbolTable symbols) {
+		this.name = name;
+		this.symbols = symbols;
+        this.items = new IntAssociativeArray<>();
+	} // AACCategory(String, SymbolTable)
 	
     /*Public Methods */
 
@@ -41,27 +88,166 @@ public class AACCategory implements AACPage {
 	 */
 	public void addItem(String imageLoc, String text) {
 		try {
-            items.set(imageLoc, text);
+            int id = symbols.intern(imageLoc);
+            items.set(id, text);
+            if (subcategories != null) {
+                subcategories.remove(id); // it is just an item now
+            } // if
         } catch (Exception e) {
             // Handle exceptions like NullKeyException if needed
             System.err.println("Error adding item: " + e.getMessage());
         } // try/catch
 	}//addItem(String imageLoc, String text)
 
+	/**
+	 * Removes the image location, and the text it speaks, from the
+	 * category. Does nothing if the image is not in the category.
+	 * @param imageLoc the location of the image
+	 */
+	public void removeItem(String imageLoc) {
+		int id = symbols.idOf(imageLoc);
+		items.remove(id);
+		if (subcategories != null) {
+			subcategories.remove(id);
+		} // if
+	} //removeItem(String)
+
+	/**
+	 * Adds a subcategory, as an item whose text is its name, replacing
+	 * any item with the same image
+	 * @param imageLoc the location of the subcategory's image
+	 * @param name the name of the subcategory
+	 * @return the new, empty subcategory
+	 */
+	AACCategory addSubcategory(String imageLoc, String name) {
+		AACCategory subcategory = new AACCategory(name, symbols);
+		subcategory.parent = this;
+		addItem(imageLoc, name);
+		if (subcategories == null) {
+			subcategories = new IntAssociativeArray<>();
+		} // if
+		subcategories.set(symbols.idOf(imageLoc), subcategory);
+		return subcategory;
+	} //addSubcategory(String, String)
+
+	/**
+	 * Finds the subcategory an image stands for, in constant time
+	 * @param imageLoc the location of the image
+	 * @return the subcategory, or null if the image is not one of this
+	 * category's subcategories
+	 */
+	public AACCategory getSubcategory(String imageLoc) {
+		return (subcategories == null) ? null
+				: subcategories.getOrDefault(symbols.idOf(imageLoc), null);
+	} //getSubcategory(String)
+
+	/**
+	 * Determines whether the category has any subcategories
+	 * @return true if it has at least one
+	 */
+	boolean hasSubcategories() {
+		return subcategories != null && subcategories.size() > 0;
+	} //hasSubcategories()
+
+	/**
+	 * Returns the category this is a subcategory of
+	 * @return the parent category, or null if this is not a subcategory
+	 */
+	public AACCategory getParent() {
+		return parent;
+	} //getParent()
+
+	/**
+	 * Removes every item from the category, e.g., to free the memory of
+	 * a category that can be read from its file again
+	 */
+	void clearItems() {
+		items = new IntAssociativeArray<>();
+		subcategories = null;
+	} //clearItems()
+
 	/**
 	 * Returns an array of all the images in the category
 	 * @return the array of image locations; if there are no images,
 	 * it should return an empty array
 	 */
 	public String[] getImageLocs() {
-		Object[] keys = items.getKeys(); // Get keys as Object[]
-    	String[] stringKeys = new String[keys.length]; // Create a String array
-    	for (int i = 0; i < keys.length; i++) {
-        	stringKeys[i] = (String) keys[i]; // Cast each key to String
-    	} // for
+    	String[] stringKeys = new String[items.size()]; // Create a String array
+    	int[] next = new int[1];
+    	items.forEach((id, text) -> stringKeys[next[0]++] = symbols.nameOf(id));
     	return stringKeys;
 	} //getImageLocs()
 
+	/**
+	 * Returns the first few images in the category
+	 * @param max the most images to return
+	 * @return the array of (at most max) image locations
+	 */
+	String[] getImageLocs(int max) {
+		String[] stringKeys = new String[Math.min(max, items.size())];
+		int[] next = new int[1];
+		items.forEach((id, text) -> {
+			if (next[0] < stringKeys.length) {
+				stringKeys[next[0]++] = symbols.nameOf(id);
+			} // if
+		});
+		return stringKeys;
+	} //getImageLocs(int)
+
+	/**
+	 * Calls the action on each image location and its text, in the
+	 * order they were added, without looking each image up again
+	 * @param action the action to perform on each image location and text
+	 */
+	public void forEachItem(BiConsumer<String, String> action) {
+		items.forEach((id, text) -> action.accept(symbols.nameOf(id), text));
+	} //forEachItem(BiConsumer)
+
+	/**
+	 * Calls the action on each item of the category and of its
+	 * subcategories, depth first: each subcategory comes just before its
+	 * own items
+	 * @param action the action to perform on each item
+	 */
+	void forEachNested(NestedItemConsumer action) {
+		forEachNested("", 1, action);
+	} //forEachNested(NestedItemConsumer)
+
+	private void forEachNested(String path, int depth, NestedItemConsumer action) {
+		items.forEach((id, text) -> {
+			String imageLoc = symbols.nameOf(id);
+			AACCategory subcategory = (subcategories == null) ? null
+					: subcategories.getOrDefault(id, null);
+			action.accept(path, imageLoc, text, depth, subcategory != null);
+			if (subcategory != null) {
+				subcategory.forEachNested(path.isEmpty() ? imageLoc
+						: path + AACMappings.PATH_SEPARATOR + imageLoc,
+						depth + 1, action);
+			} // if
+		});
+	} //forEachNested(String, int, NestedItemConsumer)
+
+	/**
+	 * Makes a copy of this category, with its image locations interned
+	 * in the given table, which must assign them the same ids (e.g., a
+	 * clone of this category's table)
+	 * @param symbols the table of image location ids for the copy
+	 * @return a copy that does not change when this category does
+	 */
+	AACCategory copy(SymbolTable symbols) {
+		AACCategory copy = new AACCategory(name, symbols);
+		copy.items = items.clone();
+		if (subcategories != null) {
+			copy.subcategories = new IntAssociativeArray<>(subcategories.size());
+			subcategories.forEach((id, subcategory) -> {
+				AACCategory subcopy = subcategory.copy(symbols);
+				subcopy.parent = copy;
+				copy.subcategories.set(id, subcopy);
+			});
+		} // if
+		return copy;
+	} //copy(SymbolTable)
+
 	/**
 	 * Returns the name of the category
 	 * @return the name of the category
@@ -72,17 +258,18 @@ public class AACCategory implements AACPage {
 
 	/**
 	 * Returns the text associated with the given image in this category
+	 * (for a subcategory, its name)
 	 * @param imageLoc the location of the image
 	 * @return the text associated with the image
 	 * @throws NoSuchElementException if the image provided is not in the current
 	 * 		   category
 	 */
 	public String select(String imageLoc) {
-		try {
-            return items.get(imageLoc);
-        } catch (KeyNotFoundException e) {
+		String text = items.getOrDefault(symbols.idOf(imageLoc), null);
+		if (text == null) {
             throw new NoSuchElementException("Image not found: " + imageLoc);
-        } // try/catch
+        } // if
+		return text;
 	} //select()
 
 	/**
@@ -91,6 +278,6 @@ public class AACCategory implements AACPage {
 	 * @return true if it is in the category, false otherwise
 	 */
 	public boolean hasImage(String imageLoc) {
-		return items.hasKey(imageLoc);
+		return items.hasKey(symbols.idOf(imageLoc));
 	} //hasImage()
 } //AACCategory
@@ -1,36 +1,132 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 import edu.grinnell.csc207.util.AssociativeArray;
-import edu.grinnell.csc207.util.KeyNotFoundException;
+import edu.grinnell.csc207.util.IntAssociativeArray;
 import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.SymbolTable;
 
 /**
- * Creates a set of mappings of an AAC that has two levels,
- * one for categories and then within each category, it has
- * images that have associated text to be spoken. This class
- * provides the methods for interacting with the categories
+ * Creates a set of mappings of an AAC that has a home page of
+ * categories, and within each category, images that have associated
+ * text to be spoken or that open a subcategory, nested to any depth.
+ * This class provides the methods for interacting with the categories
  * and updating the set of images that would be shown and handling
  * an interactions.
+ *
+ * In the mappings file, each category is a line holding its image
+ * location and name. Each item follows its category on a line starting
+ * with '>', then its image location and text. A line starting with one
+ * more '>' than the item above it belongs to a subcategory, which that
+ * item then opens (see MappingsParser):
+ * img/food/plate.png food
+ * >img/food/fruit.png fruit
+ * >>img/food/icons8-watermelon-96.png watermelon
+ *
+ * While a subcategory is selected, getCategory returns the image
+ * locations leading to it, separated by PATH_SEPARATOR.
  * 
  * @author Catie Baker & Bonsen Yusuf
  *
  */
 public class AACMappings implements AACPage {
 
+	/* Constants */
+	/**
+	 * Separates the image locations in the path to a subcategory (see
+	 * getCategory). Image locations may hold spaces (a file chosen in the
+	 * window may), but never a line break.
+	 */
+	static final String PATH_SEPARATOR = "\n";
+
 	/*Fields */
 	/**
-     * Maps image locations on the home page to their respective categories.
+	 * Interns every image location (home page and category items) as
+	 * an int id, so the maps below can use int keys.
+	 */
+	private SymbolTable symbols;
+
+	/**
+     * Maps ids of image locations on the home page to their respective categories.
      */
-    private AssociativeArray<String, AACCategory> homeMappings;
+    private IntAssociativeArray<AACCategory> homeMappings;
 
     /**
-     * The name of the currently selected catgory. 
+     * The image location of the currently selected catgory, followed by
+     * those of the subcategories selected in it, separated by
+     * PATH_SEPARATOR; the empty string on the home page.
      */
     private String currentCategory;
+
+    /**
+     * The currently selected category (or subcategory), or null on the
+     * home page.
+     */
+    private AACCategory current;
+
+    /**
+     * The mappings file we were loaded from (as last rewritten by journal
+     * compaction), or null if it could not be read.
+     */
+    private MappingsJournal.Base source;
+
+    /**
+     * The journal that edits are recorded in, or null if they are not.
+     */
+    private MappingsJournal journal;
+
+    /**
+     * The time, in nanoseconds, spent reading and parsing each file we
+     * were loaded from, by file name.
+     */
+    private AssociativeArray<String, Long> loadTimes;
+
+    /**
+     * For lazy mappings, the contents of the file they were loaded from;
+     * null if every category is always loaded.
+     */
+    private ByteBuffer lazySource;
+
+    /**
+     * For lazy mappings, where in lazySource the items of each category
+     * that is not loaded are: {start, end, line number of the first item},
+     * by the id of the category's image.
+     */
+    private IntAssociativeArray<int[]> unloaded;
+
+    /**
+     * For lazy mappings, the loaded categories that have not been edited
+     * (so they can be unloaded and loaded again), with where their items
+     * are, least recently used first. Edited categories stay loaded.
+     */
+    private AssociativeArray<Integer, int[]> resident;
+
+    /**
+     * For lazy mappings, the number of unedited categories we keep loaded.
+     */
+    private int maxResident;
+
+    /**
+     * The index of item texts and category names, or null until the
+     * first search. Kept up to date by addItem and removeItem.
+     */
+    private SearchIndex index;
+
+    /**
+     * Where the items that speak each text are, or null until the first
+     * findByText or getDuplicates. Kept up to date like index.
+     */
+    private TextIndex textIndex;
 	
 	/**
 	 * Creates a set of mappings for the AAC based on the provided
@@ -50,44 +146,341 @@ public class AACMappings implements AACPage {
 	 * represents the file with two categories, food and clothing
 	 * and food has french fries and watermelon and clothing has a 
 	 * collared shirt
+	 * 
+	 * Categories may be nested to any depth. An item line that starts
+	 * with >> is in a subcategory, namely the item on the closest line
+	 * above it that starts with a single >, whose text is the
+	 * subcategory's name, and so on:
+	 * img/food/plate.png food
+	 * >img/food/fruit.png fruit
+	 * >>img/food/icons8-watermelon-96.png watermelon
+	 * 
+	 * The file may be gzip-compressed, or a binary snapshot written by
+	 * writeSnapshot (see MappingsSnapshot). Malformed lines are reported,
+	 * with their line numbers, and skipped, as are the items under a
+	 * malformed category line. Edits recorded in the file's
+	 * journal (see enableJournal) are replayed on top of it.
+	 * 
+	 * The filename may also name a directory of such files (typically one
+	 * per category), which are parsed in parallel and added in order of
+	 * their names. Edits to mappings loaded that way cannot be journaled.
 	 * @param filename the name of the file that stores the mapping information
 	 */
 	public AACMappings(String filename) {
-		homeMappings = new AssociativeArray<>();
+		this(filename, 0);
+	} //AACMappings(String)
+
+	/**
+	 * Creates a set of mappings for the AAC based on the provided file
+	 * (see AACMappings(String)) that only loads the items of a category
+	 * when it is selected. The file is mapped into memory and only its
+	 * category lines are read at first; once more than maxLoaded
+	 * categories are loaded, the least recently used one is unloaded, to
+	 * be read from the file again if it is selected again. Categories
+	 * that have been edited stay loaded.
+	 * 
+	 * Snapshots and directories are always loaded in full.
+	 * @param filename the name of the file that stores the mapping information
+	 * @param maxLoaded the number of categories to keep loaded, or 0 to
+	 * load them all up front
+	 */
+	public AACMappings(String filename, int maxLoaded) {
+		if (maxLoaded < 0) {
+			throw new IllegalArgumentException("Invalid maxLoaded: " + maxLoaded);
+		} // if
+		symbols = new SymbolTable();
+		homeMappings = new IntAssociativeArray<>();
         currentCategory = ""; // Start on the home page
+        current = null;
+        loadTimes = new AssociativeArray<>();
 
         // Read from the file and populate the mappings
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            AACCategory currentCat = null;
-
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith(">")) {
-                    // Add an item to the current category
-                    String[] parts = line.substring(1).split(" ", 2);
-                    currentCat.addItem(parts[0], parts[1]);
-                } else {
-                    // Create a new category
-                    String[] parts = line.split(" ", 2);
-                    currentCat = new AACCategory(parts[1]);
-					try {
-                      homeMappings.set(parts[0], currentCat);
-					} catch (NullKeyException e) {
-					  System.err.println("Error: Null key encountered while adding a category.");
-					} //added try/catch because my set method in AssociativeArrays throws exception.
-                } // if/else
-            } // while
+        Path path = Paths.get(filename);
+        try {
+            if (Files.isDirectory(path)) {
+                loadDirectory(path);
+                return;
+            } // if
+            long start = System.nanoTime();
+            ByteBuffer contents = MappingsParser.read(path);
+            source = MappingsJournal.Base.of(path, contents,
+                    MappingsParser.isCompressed(path));
+            if (MappingsSnapshot.isSnapshot(contents)) {
+                MappingsSnapshot.read(contents, new FileLoader());
+            } else if (maxLoaded > 0) {
+                lazySource = contents;
+                unloaded = new IntAssociativeArray<>();
+                resident = new AssociativeArray<>();
+                maxResident = maxLoaded;
+                MappingsParser.index(contents, new Indexer());
+            } else {
+                MappingsParser.parse(contents, new FileLoader());
+            } // if/else
+            recordLoadTime(path, System.nanoTime() - start);
+            MappingsJournal.replay(source, this);
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
         } // try/catch
-	} //AACMappings(String)
+	} //AACMappings(String, int)
+
+	/**
+	 * Loads every (non-hidden) file in a directory, parsing them in
+	 * parallel and then adding their categories in order of file name
+	 * @param dir the directory
+	 * @throws IOException if the directory cannot be listed
+	 */
+	private void loadDirectory(Path dir) throws IOException {
+		Path[] files;
+		try (Stream<Path> list = Files.list(dir)) {
+			files = list.filter((file) -> Files.isRegularFile(file)
+					&& !file.getFileName().toString().startsWith("."))
+				.sorted()
+				.toArray(Path[]::new);
+		} // try
+		String[] errors = new String[files.length];
+		long[] nanos = new long[files.length];
+		MappingsParser.Recording[] parsed = MappingsParser.parseAll(files, errors, nanos);
+
+		// Only this thread touches the symbol table and maps
+		FileLoader loader = new FileLoader();
+		for (int i = 0; i < files.length; i++) {
+			if (parsed[i] == null) {
+				System.err.println("Error reading file: " + errors[i]);
+				continue;
+			} // if
+			loader.file = files[i].getFileName().toString();
+			parsed[i].replay(loader);
+			recordLoadTime(files[i], nanos[i]);
+		} // for
+	} //loadDirectory(Path)
+
+	/**
+	 * Remembers how long it took to read and parse a file
+	 */
+	private void recordLoadTime(Path file, long nanos) {
+		try {
+			loadTimes.set(file.getFileName().toString(), nanos);
+		} catch (NullKeyException e) {
+			// Only the root of a file system has no name, and it is not a file
+		} // try/catch
+	} //recordLoadTime(Path, long)
+
+	/**
+	 * Gets the time spent reading and parsing each file these mappings
+	 * were loaded from (just one, unless they came from a directory), in
+	 * the order they were added
+	 * @return the time in nanoseconds for each file, by file name
+	 */
+	public AssociativeArray<String, Long> getLoadTimes() {
+		return loadTimes.clone();
+	} //getLoadTimes()
+
+	/**
+	 * Creates mappings that share nothing mutable with the original, for
+	 * snapshot()
+	 */
+	private AACMappings(AACMappings original) {
+		symbols = original.symbols.clone();
+		homeMappings = new IntAssociativeArray<>(original.homeMappings.size());
+		original.homeMappings.forEach((id, category) ->
+			homeMappings.set(id, category.copy(symbols)));
+		currentCategory = "";
+		current = null;
+		loadTimes = new AssociativeArray<>();
+		if (original.lazySource != null) {
+			// The copy loads what it needs from the same (read-only) buffer
+			lazySource = original.lazySource;
+			unloaded = original.unloaded.clone();
+			resident = new AssociativeArray<>();
+			maxResident = original.maxResident;
+		} // if
+	} //AACMappings(AACMappings)
 	
+	/**
+	 * Adds the categories and items read from a mappings file.
+	 */
+	private class FileLoader implements MappingsParser.Handler {
+		/**
+		 * The category that item lines at each depth are added to:
+		 * levels[0] is the category of the last category line and
+		 * levels[d] the subcategory made of the last item at depth d, or
+		 * null until an item is nested under it.
+		 */
+		private AACCategory[] levels = new AACCategory[4];
+
+		/**
+		 * The image location of the last item at each depth.
+		 */
+		private String[] lastImages = new String[4];
+
+		/**
+		 * The text of the last item at each depth.
+		 */
+		private String[] lastTexts = new String[4];
+
+		/**
+		 * The name of the file being loaded, if it is one of several, or null.
+		 */
+		private String file = null;
+
+		@Override
+		public void category(String imageLoc, String name, int line) {
+			// Create a new category
+			AACCategory category = new AACCategory(name, symbols);
+			levels[0] = category;
+			try {
+				homeMappings.set(symbols.intern(imageLoc), category);
+			} catch (NullKeyException e) {
+				System.err.println("Error: Null key encountered while adding a category.");
+			} // try/catch
+		} //category(String, String, int)
+
+		@Override
+		public void item(String imageLoc, String text, int line) {
+			item(imageLoc, text, 1, line);
+		} //item(String, String, int)
+
+		@Override
+		public void item(String imageLoc, String text, int depth, int line) {
+			if (depth >= levels.length) {
+				levels = Arrays.copyOf(levels, depth * 2);
+				lastImages = Arrays.copyOf(lastImages, depth * 2);
+				lastTexts = Arrays.copyOf(lastTexts, depth * 2);
+			} // if
+			// The parser makes sure there was an item at depth - 1 (or, at
+			// depth 1, a category) to nest this one under
+			AACCategory parent = levels[depth - 1];
+			if (parent == null) {
+				parent = levels[depth - 2].addSubcategory(lastImages[depth - 1],
+						lastTexts[depth - 1]);
+				levels[depth - 1] = parent;
+			} // if
+			parent.addItem(imageLoc, text);
+			levels[depth] = null;
+			lastImages[depth] = imageLoc;
+			lastTexts[depth] = text;
+		} //item(String, String, int, int)
+
+		@Override
+		public void malformed(int line, String message) {
+			System.err.println("Error: " + (file == null ? "" : file + ": ")
+					+ "line " + line + ": " + message);
+		} //malformed(int, String)
+	} //FileLoader
+
+	/**
+	 * Adds an empty category for each category line of a lazily loaded
+	 * file, remembering where its items are.
+	 */
+	private class Indexer implements MappingsParser.IndexHandler {
+		@Override
+		public void category(String imageLoc, String name, int line, int itemsStart,
+				int itemsEnd) {
+			try {
+				int id = symbols.intern(imageLoc);
+				homeMappings.set(id, new AACCategory(name, symbols));
+				unloaded.set(id, new int[] { itemsStart, itemsEnd, line + 1 });
+			} catch (NullKeyException e) {
+				System.err.println("Error: Null key encountered while adding a category.");
+			} // try/catch
+		} //category(String, String, int, int, int)
+	} //Indexer
+
+	/**
+	 * Makes sure the items of a category are loaded, and marks it as
+	 * the most recently used, unloading the least recently used
+	 * categories if there are too many
+	 * @param id the id of the category's image
+	 * @param category the category
+	 * @return the category
+	 */
+	private AACCategory use(int id, AACCategory category) {
+		if (lazySource == null) {
+			return category;
+		} // if
+		int[] range = unloaded.getOrDefault(id, null);
+		if (range != null) {
+			unloaded.remove(id);
+			loadItems(range, category);
+		} else {
+			range = resident.getOrDefault(id, null);
+			if (range == null) {
+				return category; // edited, so always loaded
+			} // if
+			resident.remove(id);
+		} // if/else
+		try {
+			resident.set(id, range);
+		} catch (NullKeyException e) {
+			// id is never null
+		} // try/catch
+		// Unload the oldest categories, picked in one pass.
+		int excess = resident.size() - maxResident;
+		if (excess > 0) {
+			int[] victims = new int[excess];
+			Iterator<Map.Entry<Integer, int[]>> oldest = resident.iterator();
+			for (int i = 0; i < excess; i++) {
+				Map.Entry<Integer, int[]> entry = oldest.next();
+				victims[i] = entry.getKey();
+				unloaded.set(victims[i], entry.getValue());
+			} // for
+			for (int oldId : victims) {
+				resident.remove(oldId);
+				homeMappings.getOrDefault(oldId, null).clearItems();
+			} // for
+		} // if
+		return category;
+	} //use(int, AACCategory)
+
+	/**
+	 * Makes sure a category (or, on the home page, its image) stays as
+	 * it is now, rather than being reloaded from the file, because it
+	 * has been edited
+	 * @param id the id of the category's image
+	 */
+	private void pin(int id) {
+		if (lazySource != null) {
+			unloaded.remove(id);
+			resident.remove(id);
+		} // if
+	} //pin(int)
+
+	/**
+	 * Gets a category with its items, loading them into a temporary copy
+	 * if they are not loaded, so that loading it does not unload another
+	 * @param id the id of the category's image
+	 * @param category the category
+	 * @return the category, or a loaded copy of it
+	 */
+	private AACCategory loaded(int id, AACCategory category) {
+		int[] range = (lazySource == null) ? null : unloaded.getOrDefault(id, null);
+		if (range == null) {
+			return category;
+		} // if
+		AACCategory copy = new AACCategory(category.getCategory(), symbols);
+		loadItems(range, copy);
+		return copy;
+	} //loaded(int, AACCategory)
+
+	/**
+	 * Parses the items of a category from lazySource
+	 * @param range where the items are: {start, end, first line number}
+	 * @param category the category to add them to
+	 */
+	private void loadItems(int[] range, AACCategory category) {
+		FileLoader loader = new FileLoader();
+		loader.levels[0] = category;
+		MappingsParser.parse(lazySource, range[0], range[1], range[2], true, loader);
+	} //loadItems(int[], AACCategory)
+
 	/**
 	 * Given the image location selected, it determines the action to be
 	 * taken. This can be updating the information that should be displayed
 	 * or returning text to be spoken. If the image provided is a category, 
 	 * it updates the AAC's current category to be the category associated 
-	 * with that image and returns the empty string. If the AAC is currently
+	 * with that image and returns the empty string; the same goes for an
+	 * image that stands for a subcategory of the current category, which
+	 * is found in constant time. If the AAC is currently
 	 * in a category and the image provided is in that category, it returns
 	 * the text to be spoken.
 	 * @param imageLoc the location where the image is stored
@@ -100,26 +493,99 @@ public class AACMappings implements AACPage {
 		// Check if the user is currently on the home page
     	if (currentCategory.isEmpty()) {
           // If the image does not correspond to a category on the home page, throw an exception
-          if (!homeMappings.hasKey(imageLoc)) {
+          AACCategory category = homeMappings.getOrDefault(symbols.idOf(imageLoc), null);
+          if (category == null) {
             throw new NoSuchElementException("Category image not found: " + imageLoc);
         }
           // Update the current category to the selected category and return an empty string
           currentCategory = imageLoc;
+          current = use(symbols.idOf(imageLoc), category);
           return "";
     	} else {
-          // The user is in a specific category, so we need to handle item selection
-          try {
-            // Retrieve the current category object from the home mappings
-            AACCategory category = homeMappings.get(currentCategory); // May throw KeyNotFoundException
-           
-            // Use the current category to retrieve the text associated with the selected image
-            return category.select(imageLoc);
-        } catch (KeyNotFoundException e) {
-            // If the current category is not found in the home mappings, throw a NoSuchElementException
-            throw new NoSuchElementException("Key not found: " + currentCategory);
-        }
+          AACCategory subcategory = current.getSubcategory(imageLoc);
+          if (subcategory != null) {
+            currentCategory = currentCategory + PATH_SEPARATOR + imageLoc;
+            current = subcategory;
+            return "";
+          } // if
+          // The user is in a specific category, so use it to retrieve the
+          // text associated with the selected image
+          return current.select(imageLoc);
       } // if/else
 	}//select(String)
+
+	/**
+	 * Goes back one level: from a subcategory to the category it is in,
+	 * or from a category to the home page
+	 * @return true if it went back, or false if the AAC was already on
+	 * the home page
+	 */
+	public boolean back() {
+		if (current == null) {
+			return false;
+		} // if
+		AACCategory parent = current.getParent();
+		if (parent == null) {
+			reset();
+		} else {
+			current = parent;
+			currentCategory = currentCategory.substring(0,
+					currentCategory.lastIndexOf(PATH_SEPARATOR));
+		} // if/else
+		return true;
+	} //back()
+
+	/**
+	 * Goes straight to a category or subcategory, from wherever the AAC is
+	 * @param category the image locations leading to it, separated by
+	 * PATH_SEPARATOR, as getCategory returns them (or the empty string
+	 * for the home page)
+	 * @throws NoSuchElementException if there is no such category, in
+	 * which case the AAC is left on the home page
+	 */
+	public void open(String category) {
+		reset();
+		if (category.isEmpty()) {
+			return;
+		} // if
+		for (String imageLoc : category.split(PATH_SEPARATOR)) {
+			if (current != null && current.getSubcategory(imageLoc) == null) {
+				reset();
+				throw new NoSuchElementException("Category not found: " + category);
+			} // if
+			select(imageLoc);
+		} // for
+	} //open(String)
+
+	/**
+	 * Finds a category or subcategory, loading it if need be
+	 * @param category the image locations leading to it, separated by
+	 * PATH_SEPARATOR
+	 * @return the category, or null if there is none
+	 */
+	private AACCategory resolve(String category) {
+		String[] path = category.split(PATH_SEPARATOR);
+		int id = symbols.idOf(path[0]);
+		AACCategory found = homeMappings.getOrDefault(id, null);
+		if (found != null) {
+			found = use(id, found);
+		} // if
+		for (int i = 1; i < path.length && found != null; i++) {
+			found = found.getSubcategory(path[i]);
+		} // for
+		return found;
+	} //resolve(String)
+
+	/**
+	 * Gets the id of the image of the (top-level) category that a category
+	 * or subcategory is in
+	 * @param category the image locations leading to it, separated by
+	 * PATH_SEPARATOR
+	 */
+	private int topIdOf(String category) {
+		int end = category.indexOf(PATH_SEPARATOR);
+		return symbols.idOf(end < 0 ? category : category.substring(0, end));
+	} //topIdOf(String)
 	
 	/**
 	 * Provides an array of all the images in the current category
@@ -128,29 +594,42 @@ public class AACMappings implements AACPage {
 	 */
 	public String[] getImageLocs() {
 		if (currentCategory.isEmpty()) {
-			// Convert Object[] to String[]
-			Object[] keys = homeMappings.getKeys(); // Assuming getKeys() returns Object[]
-			String[] stringKeys = new String[keys.length];
-			for (int i = 0; i < keys.length; i++) {
-				stringKeys[i] = (String) keys[i]; // Explicitly cast each element
-			}
+			// Convert the ids back to image locations
+			String[] stringKeys = new String[homeMappings.size()];
+			int[] next = new int[1];
+			homeMappings.forEach((id, category) -> stringKeys[next[0]++] = symbols.nameOf(id));
 			return stringKeys;
 		} else {
-			try {
-				// Delegate to the current category's getImageLocs method
-				return homeMappings.get(currentCategory).getImageLocs();
-			} catch (KeyNotFoundException e) {
-				return new String[0];
-			}
+			// Delegate to the current category's getImageLocs method
+			return current.getImageLocs();
 		} // if/else
 	} //getImageLocs()
 	
+	/**
+	 * Provides the first few images in a category without selecting it,
+	 * e.g., to prepare their icons. For lazily loaded mappings, categories
+	 * that are not loaded are not read for this, and have no images.
+	 * @param imageLoc the location of the category's image
+	 * @param max the most images to return
+	 * @return the array of (at most max) images; if the category does not
+	 * exist, an empty array
+	 */
+	String[] peekImageLocs(String imageLoc, int max) {
+		int id = symbols.idOf(imageLoc);
+		AACCategory category = homeMappings.getOrDefault(id, null);
+		if (category == null || (lazySource != null && unloaded.hasKey(id))) {
+			return new String[0];
+		} // if
+		return category.getImageLocs(max);
+	} //peekImageLocs(String, int)
+
 	/**
 	 * Resets the current category of the AAC back to the default
 	 * category
 	 */
 	public void reset() {
 		currentCategory = "";
+		current = null;
 	} //reset()
 	
 	
@@ -171,30 +650,307 @@ public class AACMappings implements AACPage {
 	 * and food has french fries and watermelon and clothing has a 
 	 * collared shirt
 	 * 
+	 * Subcategories are written with one more > per level (see
+	 * AACMappings(String)).
+	 * 
+	 * The mappings are written to a temporary file that then replaces
+	 * the file, so the file is never left half-written. (MappingsSaver
+	 * does the same on a background thread.)
+	 * 
 	 * @param filename the name of the file to write the
 	 * AAC mapping to
 	 */
 	public void writeToFile(String filename) {
-		try (FileWriter writer = new FileWriter(filename)) {
-			for (String homeImage : homeMappings.getKeys()) {
-				try {
-					// Retrieve the category associated with the home page image
-					AACCategory category = homeMappings.get(homeImage);
-					writer.write(homeImage + " " + category.getCategory() + "\n");
-	
-					// Write all items in the category
-					for (String itemImage : category.getImageLocs()) {
-						writer.write(">" + itemImage + " " + category.select(itemImage) + "\n");
-					} // for
-				} catch (KeyNotFoundException e) {
-					// Log an error if the key is missing
-					System.err.println("Error: Key not found for home image: " + homeImage);
-				} // try/catch
-			} // for
+		try {
+			// Write a temporary file and rename it into place, so that a
+			// crash never leaves a truncated file
+			MappingsSaver.replace(this, Paths.get(filename), false);
 		} catch (IOException e) {
 			System.err.println("Error writing to file: " + e.getMessage());
 		} // try/catch
     } // writeToFile(String)	
+
+	/**
+	 * Writes the AAC mappings stored to a file as a binary snapshot,
+	 * which the constructor loads without parsing any text. See
+	 * MappingsSnapshot for the format.
+	 * @param filename the name of the file to write the
+	 * AAC mapping to
+	 */
+	public void writeSnapshot(String filename) {
+		try {
+			MappingsSnapshot.write(this, Paths.get(filename));
+		} catch (IOException e) {
+			System.err.println("Error writing to file: " + e.getMessage());
+		} // try/catch
+	} // writeSnapshot(String)
+
+	/**
+	 * Writes the mappings in the text format to writer, which the caller
+	 * should check for errors
+	 * @param writer where to write the mappings
+	 */
+	void writeText(PrintWriter writer) {
+		homeMappings.forEach((homeId, category) -> {
+			// Write the home page image and its category
+			writer.print(symbols.nameOf(homeId) + " " + category.getCategory() + "\n");
+
+			// Write all items in the category, and in its subcategories
+			loaded(homeId, category).forEachNested((path, itemImage, text, depth, isCategory) ->
+				writer.print(">".repeat(depth) + itemImage + " " + text + "\n"));
+		});
+	} // writeText(PrintWriter)
+
+	/**
+	 * Makes a copy of the categories and items that later edits to these
+	 * mappings do not affect, e.g., to write them out on another thread.
+	 * The copy starts on its home page. Every category is copied, so this
+	 * takes time in proportion to the number of items loaded.
+	 * @return the copy
+	 */
+	AACMappings snapshot() {
+		return new AACMappings(this);
+	} // snapshot()
+
+	/**
+	 * Starts recording each addItem and removeItem in a journal next to
+	 * the mappings file, instead of relying on the whole file being
+	 * rewritten. The journal is compacted into the mappings file in the
+	 * background once it grows past MappingsJournal.DEFAULT_COMPACT_THRESHOLD
+	 * bytes.
+	 */
+	public void enableJournal() {
+		enableJournal(MappingsJournal.DEFAULT_COMPACT_THRESHOLD);
+	} // enableJournal()
+
+	/**
+	 * Starts recording each addItem and removeItem in a journal next to
+	 * the mappings file, compacting it once it grows past threshold bytes
+	 * @param threshold the journal size past which to compact it
+	 */
+	public void enableJournal(long threshold) {
+		if (source == null) {
+			System.err.println("Error: no mappings file to journal edits to.");
+			return;
+		} // if
+		closeJournal();
+		try {
+			journal = new MappingsJournal(source, threshold);
+		} catch (IOException e) {
+			System.err.println("Error opening journal: " + e.getMessage());
+		} // try/catch
+	} // enableJournal(long)
+
+	/**
+	 * Stops recording edits, waiting for any compaction in progress
+	 */
+	public void closeJournal() {
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.err.println("Error closing journal: " + e.getMessage());
+			} // try/catch
+			// Compaction may have rewritten the mappings file, so reopening
+			// must check the journal against the new one
+			source = journal.getBase();
+			journal = null;
+		} // if
+	} // closeJournal()
+
+	/**
+	 * Records an edit in the journal, if there is one
+	 * @param type MappingsJournal.ADD or MappingsJournal.REMOVE
+	 */
+	private void journal(byte type, String imageLoc, String text) {
+		if (journal == null || imageLoc == null) {
+			return;
+		} // if
+		try {
+			if (type == MappingsJournal.ADD) {
+				journal.add(currentCategory, imageLoc, text);
+			} else {
+				journal.remove(currentCategory, imageLoc);
+			} // if/else
+			journal.compactIfNeeded(this);
+		} catch (IOException e) {
+			System.err.println("Error writing journal: " + e.getMessage());
+		} // try/catch
+	} // journal(byte, String, String)
+
+	/**
+	 * Re-applies an addItem read from the journal
+	 * @param category the image location of the category it was added to
+	 * (see getCategory), or the empty string for the home page
+	 * @param imageLoc the location of the image
+	 * @param text the text associated with the image
+	 */
+	void replayAdd(String category, String imageLoc, String text) {
+		if (category.isEmpty()) {
+			try {
+				int id = symbols.intern(imageLoc);
+				homeMappings.set(id, new AACCategory(text, symbols));
+				pin(id);
+				indexAdd("", imageLoc, text, true, true);
+			} catch (NullKeyException e) {
+				System.err.println("Error: Null key provided for image location.");
+			} // try/catch
+		} else {
+			AACCategory target = resolve(category);
+			if (target == null) {
+				System.err.println("Error: journal adds to missing category " + category);
+			} else {
+				boolean replacesCategory = target.getSubcategory(imageLoc) != null;
+				target.addItem(imageLoc, text);
+				pin(topIdOf(category));
+				indexAdd(category, imageLoc, text, replacesCategory,
+						target.getSubcategory(imageLoc) != null);
+			} // if/else
+		} // if/else
+	} // replayAdd(String, String, String)
+
+	/**
+	 * Re-applies a removeItem read from the journal
+	 * @param category the image location of the category it was removed
+	 * from (see getCategory), or the empty string for the home page
+	 * @param imageLoc the location of the image
+	 */
+	void replayRemove(String category, String imageLoc) {
+		boolean wasCategory = true;
+		if (category.isEmpty()) {
+			pin(symbols.idOf(imageLoc));
+			homeMappings.remove(symbols.idOf(imageLoc));
+		} else {
+			AACCategory target = resolve(category);
+			wasCategory = target != null && target.getSubcategory(imageLoc) != null;
+			if (target != null) {
+				target.removeItem(imageLoc);
+				pin(topIdOf(category));
+			} // if
+		} // if/else
+		indexRemove(category, imageLoc, wasCategory);
+	} // replayRemove(String, String)
+
+	/**
+	 * Finds the items and categories whose text best matches a query, as
+	 * the user types it: every word of the query must start a word of the
+	 * text. The first search indexes every category (for lazy mappings,
+	 * loading each in turn); later ones only use the index.
+	 * @param query the words to look for
+	 * @param k the most matches to return
+	 * @param maxEdits the most typos to allow in the last word of the query
+	 * @return the best (at most k) matches, best first
+	 */
+	public SearchIndex.Hit[] search(String query, int k, int maxEdits) {
+		if (index == null) {
+			SearchIndex built = new SearchIndex();
+			forEachCategory((imageLoc, category) -> {
+				built.add("", imageLoc, category.getCategory(), true);
+				category.forEachNested((path, item, text, depth, isCategory) ->
+					built.add(path.isEmpty() ? imageLoc : imageLoc + PATH_SEPARATOR + path, item, text,
+							isCategory));
+			});
+			index = built;
+		} // if
+		return index.search(query, k, maxEdits);
+	} //search(String, int, int)
+
+	/**
+	 * Finds every item that speaks a text (ignoring case and extra
+	 * spaces), in any category. The first call indexes every category (for
+	 * lazy mappings, loading each in turn); later ones only use the index.
+	 * @param text the text
+	 * @return where the items are, in the order they were added (empty if
+	 * there are none)
+	 */
+	public TextIndex.Location[] findByText(String text) {
+		return texts().find(text);
+	} //findByText(String)
+
+	/**
+	 * Finds the texts that more than one item speaks, e.g., the same word
+	 * in two categories
+	 * @return where the items that speak each such text are, by text (in
+	 * lower case)
+	 */
+	public AssociativeArray<String, TextIndex.Location[]> getDuplicates() {
+		return texts().duplicates();
+	} //getDuplicates()
+
+	/**
+	 * Gets the reverse index, building it if need be
+	 */
+	private TextIndex texts() {
+		if (textIndex == null) {
+			TextIndex built = new TextIndex();
+			forEachCategory((imageLoc, category) ->
+				category.forEachNested((path, item, text, depth, isCategory) -> {
+					if (!isCategory) {
+						built.add(path.isEmpty() ? imageLoc : imageLoc + PATH_SEPARATOR + path,
+								item, text);
+					} // if
+				}));
+			textIndex = built;
+		} // if
+		return textIndex;
+	} //texts()
+
+	/**
+	 * Adds an item (or, from the home page, a category) to the search
+	 * indexes that have been built
+	 * @param replacesCategory whether it replaces a category or
+	 * subcategory (and so all of its items)
+	 * @param isCategory whether, now that it has been added, the image
+	 * stands for a category or subcategory (as forEachNested reports it)
+	 */
+	private void indexAdd(String category, String imageLoc, String text,
+			boolean replacesCategory, boolean isCategory) {
+		if (replacesCategory) {
+			indexRemove(category, imageLoc, true);
+		} // if
+		if (index != null) {
+			index.add(category, imageLoc, text, isCategory);
+		} // if
+		// The text index only holds what items speak, as when it is built
+		if (textIndex != null && !isCategory) {
+			textIndex.add(category, imageLoc, text);
+		} // if
+	} //indexAdd(String, String, String, boolean, boolean)
+
+	/**
+	 * Removes an item (or a category or subcategory, and its items) from
+	 * the search indexes that have been built
+	 * @param isCategory whether the image stands for a category or
+	 * subcategory
+	 */
+	private void indexRemove(String category, String imageLoc, boolean isCategory) {
+		if (isCategory) {
+			String path = category.isEmpty() ? imageLoc : category + PATH_SEPARATOR + imageLoc;
+			if (index != null) {
+				index.removeCategory(path);
+			} // if
+			if (textIndex != null) {
+				textIndex.removeCategory(path);
+			} // if
+		} else {
+			if (index != null) {
+				index.remove(category, imageLoc);
+			} // if
+			if (textIndex != null) {
+				textIndex.remove(category, imageLoc);
+			} // if
+		} // if/else
+	} //indexRemove(String, String, boolean)
+
+	/**
+	 * Calls the action on each home page image location and its category,
+	 * in the order they were added
+	 * @param action the action to perform on each category
+	 */
+	void forEachCategory(BiConsumer<String, AACCategory> action) {
+		homeMappings.forEach((id, category) ->
+			action.accept(symbols.nameOf(id), loaded(id, category)));
+	} // forEachCategory(BiConsumer)
 	
 	/**
 	 * Adds the mapping to the current category (or the default category if
@@ -204,30 +960,55 @@ public class AACMappings implements AACPage {
 	 */
 	@Override
 	public void addItem(String imageLoc, String text) {
+		boolean replacesCategory = true;
+		boolean isCategory = true;
 		if (currentCategory.isEmpty()) {
 			// Add a new category on the home page
-			AACCategory newCategory = new AACCategory(text);
+			AACCategory newCategory = new AACCategory(text, symbols);
 			try {
-				homeMappings.set(imageLoc, newCategory); // Handle NullKeyException
+				int id = symbols.intern(imageLoc);
+				homeMappings.set(id, newCategory); // Handle NullKeyException
+				pin(id);
 			} catch (NullKeyException e) {
 				System.err.println("Error: Null key provided for image location.");
 			}
 		} else {
 			// Add an item to the current category
-			try {
-				AACCategory category = homeMappings.get(currentCategory); // Handle KeyNotFoundException
-				category.addItem(imageLoc, text);
-			} catch (KeyNotFoundException e) {
-				System.err.println("Error: Current category key not found in home mappings.");
-			}
+			replacesCategory = current.getSubcategory(imageLoc) != null;
+			current.addItem(imageLoc, text);
+			pin(topIdOf(currentCategory));
+			isCategory = current.getSubcategory(imageLoc) != null;
 		} // if/else
+		indexAdd(currentCategory, imageLoc, text, replacesCategory, isCategory);
+		journal(MappingsJournal.ADD, imageLoc, text);
 	} //addItem()
 
+	/**
+	 * Removes the image from the current category (or, on the home page,
+	 * removes the category it stands for; a subcategory is removed along
+	 * with its items). Does nothing if the image is not there.
+	 * @param imageLoc the location of the image
+	 */
+	public void removeItem(String imageLoc) {
+		boolean wasCategory = true;
+		if (currentCategory.isEmpty()) {
+			pin(symbols.idOf(imageLoc));
+			homeMappings.remove(symbols.idOf(imageLoc));
+		} else {
+			wasCategory = current.getSubcategory(imageLoc) != null;
+			current.removeItem(imageLoc);
+			pin(topIdOf(currentCategory));
+		} // if/else
+		indexRemove(currentCategory, imageLoc, wasCategory);
+		journal(MappingsJournal.REMOVE, imageLoc, null);
+	} //removeItem(String)
+
 
 	/**
-	 * Gets the name of the current category
-	 * @return returns the current category or the empty string if 
-	 * on the default category
+	 * Gets the current category
+	 * @return returns the image location of the current category (followed
+	 * by those of the subcategories selected in it, separated by
+	 * PATH_SEPARATOR) or the empty string if on the default category
 	 */
 	@Override
 	public String getCategory() {
@@ -241,7 +1022,7 @@ public class AACMappings implements AACPage {
      * @return true if the image is a category, false otherwise
      */
     public boolean isCategory(String imageLoc) { // isCategory(String)
-        return homeMappings.hasKey(imageLoc);
+        return homeMappings.hasKey(symbols.idOf(imageLoc));
     } // isCategory(String)
 
 
@@ -256,16 +1037,10 @@ public class AACMappings implements AACPage {
 	public boolean hasImage(String imageLoc) {
 		if (currentCategory.isEmpty()) {
 			// Check if the image exists on the home page
-			return homeMappings.hasKey(imageLoc);
+			return isCategory(imageLoc);
 		} else {
-			try {
-				// Check if the image exists in the current category
-				AACCategory category = homeMappings.get(currentCategory);
-				return category.hasImage(imageLoc);
-			} catch (KeyNotFoundException e) {
-				// If the current category key is missing, return false
-				return false;
-			} // try/catch
+			// Check if the image exists in the current category
+			return current.hasImage(imageLoc);
 		} // if/else
 	} //hasImage(string)
 }
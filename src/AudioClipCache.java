@@ -0,0 +1,504 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import com.sun.speech.freetts.Voice;
+import com.sun.speech.freetts.VoiceManager;
+import com.sun.speech.freetts.audio.AudioPlayer;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * A cache of the audio for the text of AAC items, so that a tap can
+ * play a clip instead of waiting for the synthesizer. Each text is
+ * rendered to PCM once, on a background thread, with its own FreeTTS
+ * voice. The clips are kept in memory, least recently used ones dropped
+ * once they use more than the memory budget, and (optionally) as WAV
+ * files in a directory, named by a hash of the voice and text, so they
+ * survive a restart.
+ */
+public class AudioClipCache implements Closeable {
+
+	/* Constants */
+
+	/**
+	 * The memory budget, in bytes, used by default (about 8 minutes of
+	 * 16 kHz, 16 bit audio).
+	 */
+	public static final long DEFAULT_BUDGET = 16L << 20;
+
+	/**
+	 * The voice used by default, which matches the one AAC speaks with.
+	 */
+	public static final String DEFAULT_VOICE = "kevin16";
+
+	/* Fields */
+
+	/**
+	 * The name of the FreeTTS voice the clips are rendered with.
+	 */
+	private final String voiceName;
+
+	/**
+	 * The directory the clips are stored in, or null to keep them only
+	 * in memory.
+	 */
+	private final Path directory;
+
+	/**
+	 * The most memory, in bytes, that the clips may use.
+	 */
+	private final long budget;
+
+	/**
+	 * The clips in memory, least recently used first, keyed by text.
+	 */
+	private final AssociativeArray<String, Pcm> clips = new AssociativeArray<>();
+
+	/**
+	 * The memory, in bytes, that the clips use.
+	 */
+	private long bytes = 0;
+
+	/**
+	 * Renders the clips, one at a time.
+	 */
+	private final ExecutorService renderer;
+
+	/**
+	 * The voice, once the renderer has allocated it.
+	 */
+	private Voice voice;
+
+	/**
+	 * The number of calls to get that found their clip, in memory or on
+	 * disk.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of calls to get that found no clip.
+	 */
+	private long misses = 0;
+
+	/**
+	 * The number of clips rendered.
+	 */
+	private long rendered = 0;
+
+	/* Constructors */
+
+	/**
+	 * Creates a cache with the default voice and memory budget
+	 * @param directory the directory to store clips in (created if need
+	 * be), or null to keep them only in memory
+	 */
+	public AudioClipCache(Path directory) {
+		this(directory, DEFAULT_VOICE, DEFAULT_BUDGET);
+	} //AudioClipCache(Path)
+
+	/**
+	 * Creates a cache
+	 * @param directory the directory to store clips in (created if need
+	 * be), or null to keep them only in memory
+	 * @param voiceName the FreeTTS voice to render with
+	 * @param budget the most memory, in bytes, the clips may use
+	 */
+	public AudioClipCache(Path directory, String voiceName, long budget) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Invalid budget: " + budget);
+		} // if
+		this.directory = directory;
+		this.voiceName = voiceName;
+		this.budget = budget;
+		this.renderer = Executors.newSingleThreadExecutor((r) -> {
+			Thread t = new Thread(r, "audio-render");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+	} //AudioClipCache(Path, String, long)
+
+	/* Public Methods */
+
+	/**
+	 * Gets the clip for some text, from memory or else from disk
+	 * @param text the text
+	 * @return the clip, or null if it has not been rendered
+	 */
+	public Pcm get(String text) {
+		synchronized (this) {
+			Pcm clip = clips.getOrDefault(text, null);
+			if (clip != null) {
+				hits++;
+				// Move it to the most recently used end
+				clips.remove(text);
+				put(text, clip);
+				return clip;
+			} // if
+		} // synchronized
+		Pcm clip = readClip(text);
+		synchronized (this) {
+			if (clip == null) {
+				misses++;
+				return null;
+			} // if
+			hits++;
+			remember(text, clip);
+		} // synchronized
+		return clip;
+	} //get(String)
+
+	/**
+	 * Renders the clip for some text in the background, unless it has
+	 * been already
+	 * @param text the text
+	 * @return a future that completes with the clip, or exceptionally if
+	 * it could not be rendered
+	 */
+	public CompletableFuture<Pcm> render(String text) {
+		return CompletableFuture.supplyAsync(() -> {
+			Pcm clip = get(text);
+			if (clip == null) {
+				clip = synthesize(text);
+				synchronized (this) {
+					rendered++;
+					remember(text, clip);
+				} // synchronized
+				writeClip(text, clip);
+			} // if
+			return clip;
+		}, renderer);
+	} //render(String)
+
+	/**
+	 * Renders the clips for some texts in the background, in order,
+	 * skipping the ones already rendered
+	 * @param texts the texts
+	 */
+	public void prerender(Iterable<String> texts) {
+		for (String text : texts) {
+			render(text).exceptionally((e) -> {
+				System.err.println("Error rendering audio: " + e.getMessage());
+				return null;
+			});
+		} // for
+	} //prerender(Iterable)
+
+	/**
+	 * Determines whether the clip for some text is in memory, without
+	 * counting a hit or miss
+	 * @param text the text
+	 * @return true if get would not have to read the disk
+	 */
+	public synchronized boolean contains(String text) {
+		return clips.hasKey(text);
+	} //contains(String)
+
+	/**
+	 * Gets the number of calls to get that found their clip
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	} //getHits()
+
+	/**
+	 * Gets the number of calls to get that found no clip
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	} //getMisses()
+
+	/**
+	 * Gets the memory used by the clips in memory
+	 * @return the number of bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	} //getBytes()
+
+	/**
+	 * Describes how well the cache is doing
+	 * @return the hit and miss counts, the number of clips and their size
+	 */
+	@Override
+	public synchronized String toString() {
+		return "AudioClipCache[hits=" + hits + ", misses=" + misses + ", rendered=" + rendered
+				+ ", clips=" + clips.size() + ", bytes=" + bytes + "]";
+	} //toString()
+
+	/**
+	 * Stops rendering, abandoning any clips not started, and frees the
+	 * voice
+	 */
+	@Override
+	public void close() {
+		renderer.shutdownNow();
+		try {
+			renderer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // try/catch
+		if (voice != null) {
+			voice.deallocate();
+		} // if
+	} //close()
+
+	/* Private Methods */
+
+	/**
+	 * Adds a clip as the most recently used and drops the least recently
+	 * used ones until we are within the budget, always keeping the most
+	 * recent one
+	 */
+	private void remember(String text, Pcm clip) {
+		if (clips.hasKey(text)) {
+			return;
+		} // if
+		put(text, clip);
+		bytes += clip.data.length;
+		// Pick the victims in one pass, oldest first, then remove them.
+		String[] victims = new String[clips.size() - 1];
+		int count = 0;
+		Iterator<Map.Entry<String, Pcm>> oldest = clips.iterator();
+		while (bytes > budget && count < victims.length && oldest.hasNext()) {
+			Map.Entry<String, Pcm> entry = oldest.next();
+			bytes -= entry.getValue().data.length;
+			victims[count++] = entry.getKey();
+		} // while
+		for (int i = 0; i < count; i++) {
+			clips.remove(victims[i]);
+		} // for
+	} //remember(String, Pcm)
+
+	/**
+	 * Adds a clip as the most recently used
+	 */
+	private void put(String text, Pcm clip) {
+		try {
+			clips.set(text, clip);
+		} catch (NullKeyException e) {
+			// text is never null
+		} // try/catch
+	} //put(String, Pcm)
+
+	/**
+	 * Renders some text with the voice, allocating it the first time.
+	 * Only called on the renderer thread.
+	 */
+	private Pcm synthesize(String text) {
+		if (voice == null) {
+			Voice v = VoiceManager.getInstance().getVoice(voiceName);
+			if (v == null) {
+				throw new IllegalStateException("No such voice: " + voiceName);
+			} // if
+			v.allocate();
+			voice = v;
+		} // if
+		Recorder recorder = new Recorder();
+		voice.setAudioPlayer(recorder);
+		if (!voice.speak(text)) {
+			throw new IllegalStateException("Could not render: " + text);
+		} // if
+		return new Pcm(recorder.format, recorder.data.toByteArray());
+	} //synthesize(String)
+
+	/**
+	 * Reads the clip for some text from the directory
+	 * @return the clip, or null if there is none (or it cannot be read)
+	 */
+	private Pcm readClip(String text) {
+		if (directory == null) {
+			return null;
+		} // if
+		Path file = fileFor(text);
+		if (!Files.exists(file)) {
+			return null;
+		} // if
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(file.toFile())) {
+			return new Pcm(in.getFormat(), in.readAllBytes());
+		} catch (IOException | UnsupportedAudioFileException e) {
+			System.err.println("Error reading file: " + e.getMessage());
+			return null;
+		} // try/catch
+	} //readClip(String)
+
+	/**
+	 * Writes the clip for some text to the directory, through a temporary
+	 * file so that a crash never leaves half a clip behind
+	 */
+	private void writeClip(String text, Pcm clip) {
+		if (directory == null) {
+			return;
+		} // if
+		Path file = fileFor(text);
+		Path temp = null;
+		try {
+			Files.createDirectories(directory);
+			temp = MappingsSaver.temporary(file);
+			AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(clip.data),
+					clip.format, clip.data.length / clip.format.getFrameSize());
+			AudioSystem.write(in, AudioFileFormat.Type.WAVE, temp.toFile());
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.err.println("Error writing to file: " + e.getMessage());
+			try {
+				if (temp != null) {
+					Files.deleteIfExists(temp);
+				} // if
+			} catch (IOException e2) {
+				// the write has already been reported
+			} // try/catch
+		} // try/catch
+	} //writeClip(String, Pcm)
+
+	/**
+	 * Gets the file for the clip of some text: a hash of the voice and the
+	 * text, so that clips from another voice are never played
+	 */
+	private Path fileFor(String text) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			sha.update(voiceName.getBytes(StandardCharsets.UTF_8));
+			sha.update((byte) 0);
+			byte[] hash = sha.digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				name.append(String.format("%02x", hash[i]));
+			} // for
+			return directory.resolve(name.append(".wav").toString());
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		} // try/catch
+	} //fileFor(String)
+
+	/* Public Classes */
+
+	/**
+	 * A rendered clip: raw PCM samples and their format.
+	 */
+	public static class Pcm {
+		/**
+		 * The format of the samples.
+		 */
+		public final AudioFormat format;
+
+		/**
+		 * The samples.
+		 */
+		public final byte[] data;
+
+		Pcm(AudioFormat format, byte[] data) {
+			this.format = format;
+			this.data = data;
+		} //Pcm(AudioFormat, byte[])
+
+		/**
+		 * Gets the length of the clip
+		 * @return the length in milliseconds
+		 */
+		public long getMillis() {
+			return (long) (1000.0 * data.length / format.getFrameSize() / format.getFrameRate());
+		} //getMillis()
+	} //Pcm
+
+	/* Private Classes */
+
+	/**
+	 * An audio player that keeps what FreeTTS writes to it instead of
+	 * playing it.
+	 */
+	private static class Recorder implements AudioPlayer {
+		AudioFormat format = new AudioFormat(16000f, 16, 1, true, true);
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		float volume = 1.0f;
+
+		public void setAudioFormat(AudioFormat format) {
+			this.format = format;
+		}
+
+		public AudioFormat getAudioFormat() {
+			return format;
+		}
+
+		public void pause() {
+		}
+
+		public void resume() {
+		}
+
+		public void reset() {
+		}
+
+		public boolean drain() {
+			return true;
+		}
+
+		public void begin(int size) {
+		}
+
+		public boolean end() {
+			return true;
+		}
+
+		public void cancel() {
+		}
+
+		public void close() {
+		}
+
+		public float getVolume() {
+			return volume;
+		}
+
+		public void setVolume(float volume) {
+			this.volume = volume;
+		}
+
+		public long getTime() {
+			return 0;
+		}
+
+		public void resetTime() {
+		}
+
+		public void startFirstSampleTimer() {
+		}
+
+		public boolean write(byte[] audioData) {
+			return write(audioData, 0, audioData.length);
+		}
+
+		public boolean write(byte[] audioData, int offset, int size) {
+			data.write(audioData, offset, size);
+			return true;
+		}
+
+		public void showMetrics() {
+		}
+	} //Recorder
+} //AudioClipCache
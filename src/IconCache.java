@@ -0,0 +1,269 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * A cache of decoded icons for the AAC grid, keyed by image location and
+ * the size of the cell they are shown in. Each image is read and decoded
+ * once and scaled down (never up) to fit its cell, so redrawing the grid
+ * does not touch the disk. Once the decoded images use more than the
+ * memory budget, the least recently used ones are dropped.
+ *
+ * The cache may be used from several threads (e.g., to decode icons
+ * before they are needed); images are decoded outside of its lock.
+ */
+public class IconCache {
+
+	/* Constants */
+
+	/**
+	 * The memory budget, in bytes, used by default.
+	 */
+	public static final long DEFAULT_BUDGET = 32L << 20;
+
+	/* Fields */
+
+	/**
+	 * The cached icons, least recently used first, keyed by
+	 * "width x height @ location".
+	 */
+	private final AssociativeArray<String, ImageIcon> icons = new AssociativeArray<>();
+
+	/**
+	 * The most memory, in bytes, that the cached images may use.
+	 */
+	private final long budget;
+
+	/**
+	 * The memory, in bytes, that the cached images use.
+	 */
+	private long bytes = 0;
+
+	/**
+	 * The number of calls to get that found their icon in the cache.
+	 */
+	private long hits = 0;
+
+	/**
+	 * The number of calls to get that had to decode their icon.
+	 */
+	private long misses = 0;
+
+	/**
+	 * The number of icons dropped to stay within the budget.
+	 */
+	private long evictions = 0;
+
+	/* Constructors */
+
+	/**
+	 * Creates an empty cache with the default memory budget
+	 */
+	public IconCache() {
+		this(DEFAULT_BUDGET);
+	} //IconCache()
+
+	/**
+	 * Creates an empty cache
+	 * @param budget the most memory, in bytes, the decoded images may use
+	 */
+	public IconCache(long budget) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Invalid budget: " + budget);
+		} // if
+		this.budget = budget;
+	} //IconCache(long)
+
+	/* Public Methods */
+
+	/**
+	 * Gets the icon for an image at its own size
+	 * @param location the location of the image
+	 * @return the icon
+	 */
+	public ImageIcon get(String location) {
+		return get(location, 0, 0);
+	} //get(String)
+
+	/**
+	 * Gets the icon for an image, scaled down to fit a cell if it is larger
+	 * @param location the location of the image
+	 * @param width the width of the cell, or 0 for no limit
+	 * @param height the height of the cell, or 0 for no limit
+	 * @return the icon
+	 */
+	public ImageIcon get(String location, int width, int height) {
+		String key = width + "x" + height + "@" + location;
+		synchronized (this) {
+			ImageIcon icon = icons.getOrDefault(key, null);
+			if (icon != null) {
+				hits++;
+				// Move it to the most recently used end
+				icons.remove(key);
+				put(key, icon);
+				return icon;
+			} // if
+			misses++;
+		} // synchronized
+		ImageIcon icon = decode(location, width, height);
+		if (icon.getIconWidth() <= 0) {
+			return icon; // Not worth keeping (e.g., a missing file)
+		} // if
+		synchronized (this) {
+			if (!icons.hasKey(key)) {
+				put(key, icon);
+				bytes += sizeOf(icon);
+				evict();
+			} // if
+		} // synchronized
+		return icon;
+	} //get(String, int, int)
+
+	/**
+	 * Determines whether the icon for an image at a size is in the cache,
+	 * without counting a hit or miss
+	 * @param location the location of the image
+	 * @param width the width of the cell, or 0 for no limit
+	 * @param height the height of the cell, or 0 for no limit
+	 * @return true if get would not have to decode it
+	 */
+	public synchronized boolean contains(String location, int width, int height) {
+		return icons.hasKey(width + "x" + height + "@" + location);
+	} //contains(String, int, int)
+
+	/**
+	 * Gets the number of calls to get that found their icon in the cache
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	} //getHits()
+
+	/**
+	 * Gets the number of calls to get that had to decode their icon
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	} //getMisses()
+
+	/**
+	 * Gets the number of icons dropped to stay within the memory budget
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	} //getEvictions()
+
+	/**
+	 * Gets the memory used by the cached images
+	 * @return the (approximate) number of bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	} //getBytes()
+
+	/**
+	 * Gets the number of cached icons
+	 * @return the number of icons
+	 */
+	public synchronized int size() {
+		return icons.size();
+	} //size()
+
+	/**
+	 * Describes how well the cache is doing
+	 * @return the hit and miss counts, the number of icons and their size
+	 */
+	@Override
+	public synchronized String toString() {
+		return "IconCache[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+				+ ", icons=" + icons.size() + ", bytes=" + bytes + "]";
+	} //toString()
+
+	/* Private Methods */
+
+	/**
+	 * Adds an icon as the most recently used
+	 */
+	private void put(String key, ImageIcon icon) {
+		try {
+			icons.set(key, icon);
+		} catch (NullKeyException e) {
+			// key is never null
+		} // try/catch
+	} //put(String, ImageIcon)
+
+	/**
+	 * Drops the least recently used icons until we are within the budget,
+	 * always keeping the most recent one
+	 */
+	private void evict() {
+		// Pick the victims in one pass, oldest first, then remove them.
+		String[] victims = new String[icons.size() - 1];
+		int count = 0;
+		Iterator<Map.Entry<String, ImageIcon>> oldest = icons.iterator();
+		while (bytes > budget && count < victims.length && oldest.hasNext()) {
+			Map.Entry<String, ImageIcon> entry = oldest.next();
+			bytes -= sizeOf(entry.getValue());
+			victims[count++] = entry.getKey();
+		} // while
+		for (int i = 0; i < count; i++) {
+			icons.remove(victims[i]);
+		} // for
+		evictions += count;
+	} //evict()
+
+	/**
+	 * Reads an image and scales it down to fit within width x height. If
+	 * ImageIO cannot read it, falls back on ImageIcon (which shows nothing
+	 * if the file is missing), at its own size.
+	 */
+	private static ImageIcon decode(String location, int width, int height) {
+		BufferedImage image;
+		try {
+			image = ImageIO.read(new File(location));
+		} catch (IOException e) {
+			image = null;
+		} // try/catch
+		if (image == null) {
+			return new ImageIcon(location);
+		} // if
+		double scale = 1.0;
+		if (width > 0 && image.getWidth() > width) {
+			scale = (double) width / image.getWidth();
+		} // if
+		if (height > 0 && image.getHeight() * scale > height) {
+			scale = (double) height / image.getHeight();
+		} // if
+		if (scale < 1.0) {
+			int w = Math.max(1, (int) Math.round(image.getWidth() * scale));
+			int h = Math.max(1, (int) Math.round(image.getHeight() * scale));
+			BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = scaled.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+					RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(image, 0, 0, w, h, null);
+			g.dispose();
+			image = scaled;
+		} // if
+		return new ImageIcon(image, location);
+	} //decode(String, int, int)
+
+	/**
+	 * Estimates the memory used by an icon's image (4 bytes per pixel)
+	 */
+	private static long sizeOf(ImageIcon icon) {
+		return 4L * Math.max(icon.getIconWidth(), 0) * Math.max(icon.getIconHeight(), 0);
+	} //sizeOf(ImageIcon)
+} //IconCache
@@ -0,0 +1,108 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes icons into an IconCache on a few background threads before
+ * the AAC grid needs them, e.g., the next page of the current category.
+ * Each call to prefetch replaces the previous request: icons from the
+ * earlier request that have not been started are skipped, so work for
+ * a page the user has navigated away from does not delay the new one.
+ */
+public class IconPrefetcher {
+
+	/* Fields */
+
+	/**
+	 * The cache to decode icons into.
+	 */
+	private final IconCache cache;
+
+	/**
+	 * The threads that decode the icons.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * The decodes requested by the last call to prefetch.
+	 */
+	private Future<?>[] inFlight = new Future<?>[0];
+
+	/**
+	 * The number of icons decoded so far.
+	 */
+	private final AtomicInteger decoded = new AtomicInteger();
+
+	/* Constructors */
+
+	/**
+	 * Creates a prefetcher that decodes icons on some daemon threads
+	 * @param cache the cache to decode icons into
+	 * @param threads the number of threads to use
+	 */
+	public IconPrefetcher(IconCache cache, int threads) {
+		this.cache = cache;
+		AtomicInteger count = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(threads, (r) -> {
+			Thread t = new Thread(r, "icon-prefetch-" + count.incrementAndGet());
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+	} //IconPrefetcher(IconCache, int)
+
+	/* Public Methods */
+
+	/**
+	 * Starts decoding the icons for some images at a size, in order,
+	 * cancelling whatever the previous call asked for that has not
+	 * started yet. Images already in the cache are skipped.
+	 * @param locations the images, most wanted first (nulls are skipped)
+	 * @param width the width of the cell they will be shown in
+	 * @param height the height of the cell they will be shown in
+	 */
+	public synchronized void prefetch(String[] locations, int width, int height) {
+		cancel();
+		Future<?>[] tasks = new Future<?>[locations.length];
+		int count = 0;
+		for (String location : locations) {
+			if (location == null || cache.contains(location, width, height)) {
+				continue;
+			} // if
+			tasks[count++] = workers.submit(() -> {
+				cache.get(location, width, height);
+				decoded.incrementAndGet();
+			});
+		} // for
+		inFlight = Arrays.copyOf(tasks, count);
+	} //prefetch(String[], int, int)
+
+	/**
+	 * Skips the decodes asked for by the last call to prefetch that have
+	 * not started yet (e.g., because the user navigated away)
+	 */
+	public synchronized void cancel() {
+		for (Future<?> task : inFlight) {
+			task.cancel(false);
+		} // for
+		inFlight = new Future<?>[0];
+	} //cancel()
+
+	/**
+	 * Gets the number of icons decoded in the background so far
+	 * @return the number of icons
+	 */
+	public int getDecoded() {
+		return decoded.get();
+	} //getDecoded()
+
+	/**
+	 * Stops the background threads, abandoning any decodes not started
+	 */
+	public void close() {
+		cancel();
+		workers.shutdownNow();
+	} //close()
+} //IconPrefetcher
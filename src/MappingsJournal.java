@@ -0,0 +1,466 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the edits made to an AACMappings since its
+ * mappings file was last written, so that each edit costs one small
+ * write instead of rewriting the whole file. The journal for
+ * "AACMappings.txt" is "AACMappings.txt.journal"; AACMappings replays it
+ * on top of the file when it loads.
+ *
+ * The journal starts with a header naming (by CRC-32 and length) the
+ * contents of the mappings file it applies to, followed by one record
+ * per edit: a 4-byte length, the record (a type byte and its strings,
+ * each a 4-byte length and UTF-8 bytes) and a CRC-32 of the record.
+ * A record that was only partly written when the program stopped fails
+ * its check, and it and anything after it are dropped.
+ *
+ * Once the journal grows past a threshold, a background thread writes
+ * the mappings (as they were when the threshold was passed) to a new
+ * mappings file, moves the records added since then to a new journal
+ * for that file, and renames both into place. A journal whose header
+ * does not match the mappings file is never replayed, so a crash
+ * between the two renames cannot apply the same edits twice.
+ */
+public class MappingsJournal implements Closeable {
+
+	/* Constants */
+
+	/**
+	 * The first four bytes of every journal ("AACJ").
+	 */
+	static final int MAGIC = 0x4141434a;
+
+	/**
+	 * The version of the format that we write.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The number of bytes in the header: magic, version, flags, and the
+	 * CRC-32 and length of the mappings file.
+	 */
+	static final int HEADER_SIZE = 20;
+
+	/**
+	 * Record type: an item (or, on the home page, a category) was added.
+	 */
+	static final byte ADD = 1;
+
+	/**
+	 * Record type: an item (or, on the home page, a category) was removed.
+	 */
+	static final byte REMOVE = 2;
+
+	/**
+	 * The journal size, in bytes, past which we compact it by default.
+	 */
+	public static final long DEFAULT_COMPACT_THRESHOLD = 1 << 20;
+
+	/**
+	 * Identifies the contents of a mappings file that a journal applies to.
+	 */
+	static class Base {
+		/**
+		 * The mappings file.
+		 */
+		final Path path;
+
+		/**
+		 * The CRC-32 of its (uncompressed) contents.
+		 */
+		final int crc;
+
+		/**
+		 * The length of its (uncompressed) contents.
+		 */
+		final long length;
+
+		/**
+		 * Whether it is a binary snapshot rather than text.
+		 */
+		final boolean snapshot;
+
+		/**
+		 * Whether the file is gzip-compressed.
+		 */
+		final boolean gzip;
+
+		Base(Path path, int crc, long length, boolean snapshot, boolean gzip) {
+			this.path = path;
+			this.crc = crc;
+			this.length = length;
+			this.snapshot = snapshot;
+			this.gzip = gzip;
+		} //Base(Path, int, long, boolean, boolean)
+
+		/**
+		 * Identifies the contents of a mappings file
+		 * @param path the mappings file
+		 * @param contents its uncompressed contents (which are not consumed)
+		 * @param gzip whether the file is gzip-compressed
+		 */
+		static Base of(Path path, ByteBuffer contents, boolean gzip) {
+			CRC32 crc = new CRC32();
+			crc.update(contents.duplicate());
+			return new Base(path, (int) crc.getValue(), contents.remaining(),
+					MappingsSnapshot.isSnapshot(contents), gzip);
+		} //of(Path, ByteBuffer, boolean)
+	} //Base
+
+	/* Fields */
+
+	/**
+	 * The mappings file we currently apply to.
+	 */
+	private Base base;
+
+	/**
+	 * The journal file.
+	 */
+	private final Path file;
+
+	/**
+	 * Where compaction writes the new journal before renaming it.
+	 */
+	private final Path newFile;
+
+	/**
+	 * The open journal, positioned at its end.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The journal size past which we compact.
+	 */
+	private final long threshold;
+
+	/**
+	 * Runs compactions, one at a time.
+	 */
+	private final ExecutorService compactor;
+
+	/**
+	 * Whether a compaction has been started and not yet finished.
+	 */
+	private boolean compacting;
+
+	/* Constructors */
+
+	/**
+	 * Opens the journal for a mappings file for appending, starting a new
+	 * one if there is none for the file's current contents. Records left
+	 * half-written by a crash are dropped.
+	 * @param base the mappings file, as it was loaded
+	 * @param threshold the journal size, in bytes, past which to compact
+	 * @throws IOException if the journal cannot be opened
+	 */
+	MappingsJournal(Base base, long threshold) throws IOException {
+		this.base = base;
+		this.file = sibling(base.path, ".journal");
+		this.newFile = sibling(base.path, ".journal.new");
+		this.threshold = threshold;
+
+		// Finish a compaction that stopped after renaming the mappings file
+		if (Files.exists(newFile)) {
+			if (validEnd(newFile, base) >= 0 && validEnd(file, base) < 0) {
+				Files.move(newFile, file, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				Files.delete(newFile);
+			} // if/else
+		} // if
+
+		long end = validEnd(file, base);
+		if (end < 0) {
+			create(file, base).close();
+			end = HEADER_SIZE;
+		} // if
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		channel.truncate(end);
+		channel.position(end);
+
+		compactor = Executors.newSingleThreadExecutor((r) -> {
+			Thread t = new Thread(r, "mappings-journal");
+			t.setDaemon(true);
+			return t;
+		});
+	} //MappingsJournal(Base, long)
+
+	/* Public Methods */
+
+	/**
+	 * Replays the journal for a mappings file, if it has one for the
+	 * file's current contents, on top of the mappings loaded from it
+	 * @param base the mappings file, as it was loaded
+	 * @param mappings the mappings loaded from it
+	 */
+	static void replay(Base base, AACMappings mappings) {
+		// After a crash mid-compaction, only one of these matches base.
+		for (Path journal : new Path[] { sibling(base.path, ".journal"),
+				sibling(base.path, ".journal.new") }) {
+			try {
+				if (Files.exists(journal) && scan(journal, base, mappings) >= 0) {
+					return;
+				} // if
+			} catch (IOException e) {
+				System.err.println("Error reading journal: " + e.getMessage());
+			} // try/catch
+		} // for
+	} //replay(Base, AACMappings)
+
+	/**
+	 * Records that an item (or, if category is empty, a category) was added
+	 * @param category the category, as AACMappings.getCategory returns
+	 * it, or the empty string for the home page
+	 * @param imageLoc the location of the image
+	 * @param text the text associated with the image
+	 * @throws IOException if the record cannot be written
+	 */
+	synchronized void add(String category, String imageLoc, String text) throws IOException {
+		append(record(ADD, category, imageLoc, text));
+	} //add(String, String, String)
+
+	/**
+	 * Records that an item (or, if category is empty, a category) was
+	 * removed
+	 * @param category the category, as AACMappings.getCategory returns
+	 * it, or the empty string for the home page
+	 * @param imageLoc the location of the image
+	 * @throws IOException if the record cannot be written
+	 */
+	synchronized void remove(String category, String imageLoc) throws IOException {
+		append(record(REMOVE, category, imageLoc));
+	} //remove(String, String)
+
+	/**
+	 * Starts compacting the journal in the background if it has passed
+	 * the threshold. Must be called on the thread that edits the mappings,
+	 * after the edit has been recorded.
+	 * @param mappings the mappings this journal records edits to
+	 * @throws IOException if the journal's size cannot be read
+	 */
+	synchronized void compactIfNeeded(AACMappings mappings) throws IOException {
+		if (compacting || channel.size() < threshold) {
+			return;
+		} // if
+		compacting = true;
+		AACMappings snapshot = mappings.snapshot();
+		long mark = channel.size();
+		compactor.execute(() -> compact(snapshot, mark));
+	} //compactIfNeeded(AACMappings)
+
+	/**
+	 * Gets the mappings file this journal applies to now. Compaction
+	 * replaces it, so the base the journal was opened with may be stale.
+	 * @return the current base
+	 */
+	synchronized Base getBase() {
+		return base;
+	} //getBase()
+
+	/**
+	 * Waits for any compaction in progress and closes the journal
+	 * @throws IOException if the journal cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // try/catch
+		synchronized (this) {
+			channel.close();
+		} // synchronized
+	} //close()
+
+	/* Private Methods */
+
+	/**
+	 * Writes a snapshot of the mappings as the new mappings file, in the
+	 * same format and compression as the old one, then starts a new
+	 * journal holding the records from mark on
+	 * @param snapshot the mappings as of mark
+	 * @param mark the journal size when the snapshot was taken
+	 */
+	private void compact(AACMappings snapshot, long mark) {
+		Path temp = null;
+		try {
+			temp = MappingsSaver.temporary(base.path);
+			Base written = MappingsSaver.write(snapshot, temp, base.path, base.snapshot,
+					base.gzip);
+			synchronized (this) {
+				// Copy the records added since the snapshot to a new journal.
+				try (FileChannel next = create(newFile, written)) {
+					long count = channel.size() - mark;
+					for (long done = 0; done < count; ) {
+						done += channel.transferTo(mark + done, count - done, next);
+					} // for
+					next.force(true);
+				} // try
+				// From here on, a crash leaves a journal that matches the
+				// mappings file, whichever one that is.
+				MappingsSaver.commit(temp, base.path);
+				channel.close();
+				Files.move(newFile, file, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+				channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				channel.position(channel.size());
+				base = written;
+			} // synchronized
+		} catch (IOException e) {
+			System.err.println("Error compacting journal: " + e.getMessage());
+		} finally {
+			deleteTemporary(temp);
+			synchronized (this) {
+				compacting = false;
+			} // synchronized
+		} // try/catch/finally
+	} //compact(AACMappings, long)
+
+	/**
+	 * Deletes the temporary file of a compaction that failed (after a
+	 * successful one, it has already been renamed away)
+	 */
+	private static void deleteTemporary(Path temp) {
+		if (temp == null) {
+			return;
+		} // if
+		try {
+			Files.deleteIfExists(temp);
+		} catch (IOException e) {
+			System.err.println("Error deleting file: " + e.getMessage());
+		} // try/catch
+	} //deleteTemporary(Path)
+
+	/**
+	 * Writes a record and makes sure it reaches the disk
+	 */
+	private void append(ByteBuffer record) throws IOException {
+		while (record.hasRemaining()) {
+			channel.write(record);
+		} // while
+		channel.force(false);
+	} //append(ByteBuffer)
+
+	/**
+	 * Creates (or replaces) a journal holding only a header for base
+	 * @return the new journal, open for writing and positioned at its end
+	 */
+	private static FileChannel create(Path journal, Base base) throws IOException {
+		FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+		header.putInt(base.crc).putLong(base.length).flip();
+		while (header.hasRemaining()) {
+			channel.write(header);
+		} // while
+		channel.force(true);
+		return channel;
+	} //create(Path, Base)
+
+	/**
+	 * Encodes a record of the given type with the given strings
+	 */
+	private static ByteBuffer record(byte type, String... fields) {
+		byte[][] bytes = new byte[fields.length][];
+		int length = 1;
+		for (int i = 0; i < fields.length; i++) {
+			bytes[i] = String.valueOf(fields[i]).getBytes(StandardCharsets.UTF_8);
+			length += 4 + bytes[i].length;
+		} // for
+		ByteBuffer record = ByteBuffer.allocate(4 + length + 4);
+		record.putInt(length).put(type);
+		for (byte[] field : bytes) {
+			record.putInt(field.length).put(field);
+		} // for
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 4, length);
+		record.putInt((int) crc.getValue()).flip();
+		return record;
+	} //record(byte, String...)
+
+	/**
+	 * Finds the end of the last intact record in a journal
+	 * @return that position, or -1 if the journal is missing or does not
+	 * apply to base
+	 */
+	private static long validEnd(Path journal, Base base) throws IOException {
+		return Files.exists(journal) ? scan(journal, base, null) : -1;
+	} //validEnd(Path, Base)
+
+	/**
+	 * Reads a journal, applying its intact records to the mappings (if
+	 * not null)
+	 * @return the end of the last intact record, or -1 if the journal does
+	 * not apply to base
+	 */
+	private static long scan(Path journal, Base base, AACMappings mappings) throws IOException {
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journal));
+		if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC
+				|| in.getShort() != VERSION) {
+			return -1;
+		} // if
+		in.getShort(); // flags
+		if (in.getInt() != base.crc || in.getLong() != base.length) {
+			return -1;
+		} // if
+		CRC32 crc = new CRC32();
+		int end = in.position();
+		while (end + 4 <= in.limit()) {
+			int length = in.getInt(end);
+			if (length < 1 || length > in.limit() - end - 8) {
+				break;
+			} // if
+			crc.reset();
+			crc.update(in.array(), end + 4, length);
+			byte type = in.get(end + 4);
+			if ((int) crc.getValue() != in.getInt(end + 4 + length)
+					|| (type != ADD && type != REMOVE)) {
+				break;
+			} // if
+			String[] fields = new String[type == ADD ? 3 : 2];
+			int next = end + 5;
+			for (int i = 0; i < fields.length; i++) {
+				int size = in.getInt(next);
+				if (size < 0 || next + 4 + size > end + 4 + length) {
+					throw new IOException("Corrupt journal record at " + end);
+				} // if
+				fields[i] = new String(in.array(), next + 4, size, StandardCharsets.UTF_8);
+				next += 4 + size;
+			} // for
+			if (mappings != null) {
+				if (type == ADD) {
+					mappings.replayAdd(fields[0], fields[1], fields[2]);
+				} else {
+					mappings.replayRemove(fields[0], fields[1]);
+				} // if/else
+			} // if
+			end += 4 + length + 4;
+		} // while
+		return end;
+	} //scan(Path, Base, AACMappings)
+
+	/**
+	 * Gets the path of the file next to path with the suffix added to
+	 * its name
+	 */
+	private static Path sibling(Path path, String suffix) {
+		return Paths.get(path.toString() + suffix);
+	} //sibling(Path, String)
+} //MappingsJournal
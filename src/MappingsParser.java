@@ -0,0 +1,497 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the AAC mappings file format (see AACMappings) straight from
+ * the bytes of a memory-mapped file, calling a handler for each category
+ * and item. Apart from the strings handed to the handler, nothing is
+ * allocated per line. Gzip-compressed files are recognized by their
+ * magic number and decompressed first.
+ *
+ * Items may be nested: a line that starts with n+1 '>'s is an item of
+ * a subcategory, namely the item on the closest line above it that
+ * starts with n '>'s. For instance:
+ * img/food/plate.png food
+ * >img/food/fruit.png fruit
+ * >>img/food/icons8-watermelon-96.png watermelon
+ * >img/food/icons8-french-fries-96.png french fries
+ * 
+ * Malformed lines are passed to the handler, with their line numbers,
+ * and skipped.
+ */
+public class MappingsParser {
+
+	/**
+	 * Receives the contents of a mappings file as it is parsed.
+	 */
+	public interface Handler {
+		/**
+		 * Called for each category line
+		 * @param imageLoc the location of the category's image
+		 * @param name the name of the category
+		 * @param line the line number (starting at 1)
+		 */
+		void category(String imageLoc, String name, int line);
+
+		/**
+		 * Called for each item line, after the category it belongs to
+		 * @param imageLoc the location of the item's image
+		 * @param text the text that image should speak
+		 * @param line the line number (starting at 1)
+		 */
+		void item(String imageLoc, String text, int line);
+
+		/**
+		 * Called for each item line, at any depth, after the line of the
+		 * category or item it belongs to. By default, items at depth 1 are
+		 * passed to item(imageLoc, text, line) and deeper ones are malformed.
+		 * @param imageLoc the location of the item's image
+		 * @param text the text that image should speak
+		 * @param depth the number of '>'s the line starts with
+		 * @param line the line number (starting at 1)
+		 */
+		default void item(String imageLoc, String text, int depth, int line) {
+			if (depth == 1) {
+				item(imageLoc, text, line);
+			} else {
+				malformed(line, "nested items are not supported here");
+			} // if/else
+		} //item(String, String, int, int)
+
+		/**
+		 * Called for each line that cannot be parsed. By default, prints
+		 * a message to standard error.
+		 * @param line the line number (starting at 1)
+		 * @param message a description of the problem
+		 */
+		default void malformed(int line, String message) {
+			System.err.println("Error: line " + line + ": " + message);
+		} //malformed(int, String)
+	} //Handler
+
+	/**
+	 * A handler that remembers what it is given, so that a file can be
+	 * parsed on one thread and its contents handed to another handler
+	 * (on another thread) later.
+	 */
+	public static class Recording implements Handler {
+		/* The kinds of event */
+		private static final byte CATEGORY = 0;
+		private static final byte ITEM = 1;
+		private static final byte MALFORMED = 2;
+
+		/**
+		 * What each event was: CATEGORY, ITEM or MALFORMED.
+		 */
+		private byte[] kinds = new byte[16];
+
+		/**
+		 * The line number of each event.
+		 */
+		private int[] lines = new int[16];
+
+		/**
+		 * The depth of each ITEM event.
+		 */
+		private int[] depths = new int[16];
+
+		/**
+		 * The two strings of each event (for MALFORMED, the message and null).
+		 */
+		private String[] strings = new String[32];
+
+		/**
+		 * The number of events.
+		 */
+		private int size = 0;
+
+		@Override
+		public void category(String imageLoc, String name, int line) {
+			add(CATEGORY, imageLoc, name, line);
+		} //category(String, String, int)
+
+		@Override
+		public void item(String imageLoc, String text, int line) {
+			item(imageLoc, text, 1, line);
+		} //item(String, String, int)
+
+		@Override
+		public void item(String imageLoc, String text, int depth, int line) {
+			add(ITEM, imageLoc, text, line);
+			depths[size - 1] = depth;
+		} //item(String, String, int, int)
+
+		@Override
+		public void malformed(int line, String message) {
+			add(MALFORMED, message, null, line);
+		} //malformed(int, String)
+
+		/**
+		 * Passes everything recorded, in order, to another handler
+		 * @param handler the handler to pass it to
+		 */
+		public void replay(Handler handler) {
+			for (int i = 0; i < size; i++) {
+				switch (kinds[i]) {
+					case CATEGORY:
+						handler.category(strings[2 * i], strings[2 * i + 1], lines[i]);
+						break;
+					case ITEM:
+						handler.item(strings[2 * i], strings[2 * i + 1], depths[i], lines[i]);
+						break;
+					default:
+						handler.malformed(lines[i], strings[2 * i]);
+				} // switch
+			} // for
+		} //replay(Handler)
+
+		private void add(byte kind, String first, String second, int line) {
+			if (size == kinds.length) {
+				kinds = Arrays.copyOf(kinds, size * 2);
+				lines = Arrays.copyOf(lines, size * 2);
+				depths = Arrays.copyOf(depths, size * 2);
+				strings = Arrays.copyOf(strings, size * 4);
+			} // if
+			kinds[size] = kind;
+			lines[size] = line;
+			strings[2 * size] = first;
+			strings[2 * size + 1] = second;
+			size++;
+		} //add(byte, String, String, int)
+	} //Recording
+
+	/**
+	 * Parses a number of files by splitting them between the threads of
+	 * a fork/join pool.
+	 */
+	private static class ParseFiles extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path[] files;
+		private final Recording[] results;
+		private final String[] errors;
+		private final long[] nanos;
+		private final int lo;
+		private final int hi;
+
+		ParseFiles(Path[] files, Recording[] results, String[] errors, long[] nanos,
+				int lo, int hi) {
+			this.files = files;
+			this.results = results;
+			this.errors = errors;
+			this.nanos = nanos;
+			this.lo = lo;
+			this.hi = hi;
+		} //ParseFiles(Path[], Recording[], String[], long[], int, int)
+
+		@Override
+		protected void compute() {
+			if (hi - lo > 1) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new ParseFiles(files, results, errors, nanos, lo, mid),
+						new ParseFiles(files, results, errors, nanos, mid, hi));
+				return;
+			} // if
+			long start = System.nanoTime();
+			try {
+				ByteBuffer contents = read(files[lo]);
+				Recording recording = new Recording();
+				if (MappingsSnapshot.isSnapshot(contents)) {
+					MappingsSnapshot.read(contents, recording);
+				} else {
+					parse(contents, recording);
+				} // if/else
+				results[lo] = recording;
+			} catch (IOException e) {
+				errors[lo] = e.getMessage();
+			} // try/catch
+			nanos[lo] = System.nanoTime() - start;
+		} //compute()
+	} //ParseFiles
+
+	/* Constants */
+
+	/**
+	 * The first two bytes of every gzip file.
+	 */
+	private static final int GZIP_MAGIC = 0x1f8b;
+
+	/* Public Methods */
+
+	/**
+	 * Parses a mappings file, which may be gzip-compressed
+	 * @param file the file to parse
+	 * @param handler the handler to call for each line
+	 * @throws IOException if the file cannot be read
+	 */
+	public static void parse(Path file, Handler handler) throws IOException {
+		parse(read(file), handler);
+	} //parse(Path, Handler)
+
+	/**
+	 * Parses the contents of a mappings file from position() to limit()
+	 * of the buffer
+	 * @param buffer the (uncompressed) contents of the file
+	 * @param handler the handler to call for each line
+	 */
+	public static void parse(ByteBuffer buffer, Handler handler) {
+		parse(buffer, buffer.position(), buffer.limit(), 1, false, handler);
+	} //parse(ByteBuffer, Handler)
+
+	/**
+	 * Parses part of the contents of a mappings file, which must start
+	 * at the beginning of a line. The buffer's position and limit are
+	 * ignored and unchanged, so several threads may parse the same buffer.
+	 * @param buffer the (uncompressed) contents of the file
+	 * @param from the index of the first byte to parse
+	 * @param to the index after the last byte to parse
+	 * @param firstLine the line number of the line starting at from
+	 * @param inCategory whether item lines at the start belong to a
+	 * category (e.g., one whose line comes just before from); if so, they
+	 * must start at depth 1
+	 * @param handler the handler to call for each line
+	 */
+	public static void parse(ByteBuffer buffer, int from, int to, int firstLine,
+			boolean inCategory, Handler handler) {
+		int end = to;
+		int lineNumber = firstLine - 1;
+		byte[] scratch = new byte[256];
+		// The depth of the last line parsed: 0 for a category, and -1
+		// before any category
+		int lastDepth = inCategory ? 0 : -1;
+		for (int start = from; start < end; ) {
+			lineNumber++;
+			// Find the end of the line, ignoring a trailing \r
+			int newline = start;
+			while (newline < end && buffer.get(newline) != '\n') {
+				newline++;
+			} // while
+			int lineEnd = newline;
+			if (lineEnd > start && buffer.get(lineEnd - 1) == '\r') {
+				lineEnd--;
+			} // if
+			int fieldStart = start;
+			while (fieldStart < lineEnd && buffer.get(fieldStart) == '>') {
+				fieldStart++;
+			} // while
+			int depth = fieldStart - start;
+			boolean isItem = depth > 0;
+
+			// Split the line at its first space
+			int space = fieldStart;
+			while (space < lineEnd && buffer.get(space) != ' ') {
+				space++;
+			} // while
+			if (lineEnd == start) {
+				handler.malformed(lineNumber, "empty line");
+			} else if (space == lineEnd || space == fieldStart) {
+				handler.malformed(lineNumber, "expected an image location, a space and text");
+				// Lines nested under it (for a category, its items) have
+				// nothing to belong to
+				lastDepth = Math.min(lastDepth, depth - 1);
+			} else if (isItem && lastDepth < 0) {
+				handler.malformed(lineNumber, "item appears before any category");
+			} else if (depth > lastDepth + 1) {
+				handler.malformed(lineNumber, "item is nested more deeply than the line before it");
+			} else {
+				int length = lineEnd - fieldStart;
+				if (length > scratch.length) {
+					scratch = new byte[Math.max(length, scratch.length * 2)];
+				} // if
+				buffer.get(fieldStart, scratch, 0, length);
+				int split = space - fieldStart;
+				String imageLoc = new String(scratch, 0, split, StandardCharsets.UTF_8);
+				String text = new String(scratch, split + 1, length - split - 1,
+						StandardCharsets.UTF_8);
+				if (isItem) {
+					handler.item(imageLoc, text, depth, lineNumber);
+				} else {
+					handler.category(imageLoc, text, lineNumber);
+				} // if/else
+				lastDepth = depth;
+			} // if/else
+			start = newline + 1;
+		} // for
+	} //parse(ByteBuffer, int, int, int, boolean, Handler)
+
+	/**
+	 * Receives the categories of a mappings file, without their items.
+	 */
+	public interface IndexHandler {
+		/**
+		 * Called for each category line, with where its items are, so they
+		 * can be parsed later
+		 * @param imageLoc the location of the category's image
+		 * @param name the name of the category
+		 * @param line the line number (starting at 1)
+		 * @param itemsStart the index of the first byte after the category line
+		 * @param itemsEnd the index of the first byte after its items
+		 */
+		void category(String imageLoc, String name, int line, int itemsStart, int itemsEnd);
+
+		/**
+		 * Called for each line that cannot be parsed. By default, prints
+		 * a message to standard error.
+		 * @param line the line number (starting at 1)
+		 * @param message a description of the problem
+		 */
+		default void malformed(int line, String message) {
+			System.err.println("Error: line " + line + ": " + message);
+		} //malformed(int, String)
+	} //IndexHandler
+
+	/**
+	 * Finds the categories in the contents of a mappings file without
+	 * decoding their items, which can be parsed later with
+	 * parse(buffer, itemsStart, itemsEnd, line + 1, true, handler).
+	 * Malformed category lines are passed to the handler, along with any
+	 * lines before the first category and the items that follow a
+	 * malformed category line, which (as in parse) belong to no category.
+	 * Other malformed lines are reported when the items are parsed.
+	 * @param buffer the (uncompressed) contents of the file
+	 * @param handler the handler to call for each category
+	 */
+	public static void index(ByteBuffer buffer, IndexHandler handler) {
+		// Parses single category lines, passing along where the items are
+		class HeaderHandler implements Handler {
+			int itemsStart;
+			int itemsEnd;
+			boolean parsed;
+
+			@Override
+			public void category(String imageLoc, String name, int line) {
+				parsed = true;
+				handler.category(imageLoc, name, line, itemsStart, itemsEnd);
+			} //category(String, String, int)
+
+			@Override
+			public void item(String imageLoc, String text, int line) {
+				// Never reached: items are only parsed here when there is no
+				// category for them to belong to, which makes them malformed
+			} //item(String, String, int)
+
+			@Override
+			public void malformed(int line, String message) {
+				handler.malformed(line, message);
+			} //malformed(int, String)
+		} //HeaderHandler
+		HeaderHandler headers = new HeaderHandler();
+
+		int end = buffer.limit();
+		int lineNumber = 0;
+		// The category line we have found but not yet parsed, because we
+		// do not know where its items end
+		int headerStart = -1;
+		int headerEnd = -1;
+		int headerLine = 0;
+		for (int start = buffer.position(); ; ) {
+			boolean atEnd = start == end;
+			// Empty lines are left for parse to report along with the items
+			boolean empty = !atEnd && (buffer.get(start) == '\n' || (buffer.get(start) == '\r'
+					&& (start + 1 == end || buffer.get(start + 1) == '\n')));
+			int next = atEnd ? end : lineEnd(buffer, start, end);
+			if (atEnd || (buffer.get(start) != '>' && !empty)) {
+				if (headerStart >= 0) {
+					headers.itemsStart = headerEnd;
+					headers.itemsEnd = start;
+					headers.parsed = false;
+					parse(buffer, headerStart, headerEnd, headerLine, false, headers);
+					if (!headers.parsed) {
+						// Report its items, which have no category
+						parse(buffer, headerEnd, start, headerLine + 1, false, headers);
+					} // if
+				} // if
+				if (atEnd) {
+					return;
+				} // if
+				headerStart = start;
+				headerEnd = next;
+				headerLine = lineNumber + 1;
+			} else if (headerStart < 0) {
+				parse(buffer, start, next, lineNumber + 1, false, headers);
+			} // if/else
+			start = next;
+			lineNumber++;
+		} // for
+	} //index(ByteBuffer, IndexHandler)
+
+	/**
+	 * Finds the start of the line after the one that starts at start
+	 */
+	private static int lineEnd(ByteBuffer buffer, int start, int end) {
+		int newline = start;
+		while (newline < end && buffer.get(newline) != '\n') {
+			newline++;
+		} // while
+		return Math.min(newline + 1, end);
+	} //lineEnd(ByteBuffer, int, int)
+
+	/**
+	 * Parses a number of mappings files (text, gzip-compressed text or
+	 * snapshots) in parallel on the common fork/join pool. The results
+	 * come back in the order of files, whatever order they finished in.
+	 * @param files the files to parse
+	 * @param errors receives, for each file that could not be read, why
+	 * not (and null for the others)
+	 * @param nanos receives the time spent reading and parsing each file
+	 * @return the contents of each file, or null for files that could not
+	 * be read
+	 */
+	public static Recording[] parseAll(Path[] files, String[] errors, long[] nanos) {
+		Recording[] results = new Recording[files.length];
+		if (files.length > 0) {
+			ForkJoinPool.commonPool().invoke(
+					new ParseFiles(files, results, errors, nanos, 0, files.length));
+		} // if
+		return results;
+	} //parseAll(Path[], String[], long[])
+
+	/**
+	 * Checks whether a file is gzip-compressed
+	 * @param file the file to check
+	 * @return true if it starts with the gzip magic number
+	 * @throws IOException if the file cannot be read
+	 */
+	public static boolean isCompressed(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(2);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// keep reading
+			} // while
+			return !magic.hasRemaining() && (magic.getShort(0) & 0xffff) == GZIP_MAGIC;
+		} // try
+	} //isCompressed(Path)
+
+	/**
+	 * Gets the uncompressed contents of a mappings file. Plain files are
+	 * memory-mapped; gzip-compressed files are inflated into memory.
+	 * @param file the file to read
+	 * @return a buffer holding the contents
+	 * @throws IOException if the file cannot be read
+	 */
+	public static ByteBuffer read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File too large to map: " + file);
+			} // if
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (size >= 2 && (mapped.getShort(0) & 0xffff) == GZIP_MAGIC) {
+				try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 1 << 16)) {
+					return ByteBuffer.wrap(in.readAllBytes());
+				} // try
+			} // if
+			return mapped;
+		} // try
+	} //read(Path)
+} //MappingsParser
@@ -0,0 +1,305 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves AACMappings to a file on a background thread, so that the
+ * Swing event thread never waits for the disk. Each save copies the
+ * mappings on the calling thread (see AACMappings.snapshot), which
+ * takes time in proportion to the number of items: about 1 ms for
+ * 100,000 items in the AACMappings.snapshot benchmark. The background
+ * thread writes the copy through a large buffer to a temporary file
+ * next to the target, forces it to disk and renames it over the
+ * target, so a crash leaves either the old file or the new one, never
+ * a truncated one. Every write gets a temporary file of its own, so
+ * saves of the same target from several places (writeToFile, a saver,
+ * journal compaction) never write over each other's.
+ *
+ * Saves requested while an earlier one is still waiting to start are
+ * coalesced: only the latest snapshot is written.
+ */
+public class MappingsSaver implements Closeable {
+
+	/* Constants */
+
+	/**
+	 * The size of the buffer between the writer and the file.
+	 */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Counts the bytes written through it.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		/**
+		 * The number of bytes written so far.
+		 */
+		long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		} //CountingOutputStream(OutputStream)
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		} //write(int)
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		} //write(byte[], int, int)
+	} //CountingOutputStream
+
+	/* Fields */
+
+	/**
+	 * The file we save to.
+	 */
+	private final Path target;
+
+	/**
+	 * Whether we save binary snapshots rather than text.
+	 */
+	private final boolean snapshot;
+
+	/**
+	 * Runs the writes, one at a time.
+	 */
+	private final ExecutorService writer;
+
+	/**
+	 * The latest snapshot waiting to be written, or null if none is.
+	 */
+	private AACMappings pending;
+
+	/**
+	 * Completed when the pending snapshot has been written.
+	 */
+	private CompletableFuture<Void> pendingDone;
+
+	/* Constructors */
+
+	/**
+	 * Creates a saver that writes the text format to target
+	 * @param target the file to save to
+	 */
+	public MappingsSaver(Path target) {
+		this(target, false);
+	} //MappingsSaver(Path)
+
+	/**
+	 * Creates a saver that writes to target
+	 * @param target the file to save to
+	 * @param snapshot true to write binary snapshots (see
+	 * MappingsSnapshot), false to write text
+	 */
+	public MappingsSaver(Path target, boolean snapshot) {
+		this.target = target;
+		this.snapshot = snapshot;
+		removeLeftovers(target);
+		this.writer = Executors.newSingleThreadExecutor((r) -> {
+			Thread t = new Thread(r, "mappings-saver");
+			t.setDaemon(true);
+			return t;
+		});
+	} //MappingsSaver(Path, boolean)
+
+	/* Public Methods */
+
+	/**
+	 * Saves the mappings as they are now, in the background. Must be
+	 * called on the thread that edits the mappings.
+	 * @param mappings the mappings to save
+	 * @return a future that completes once a snapshot at least as new as
+	 * this one is safely on disk, or completes exceptionally if that
+	 * write fails
+	 */
+	public synchronized CompletableFuture<Void> save(AACMappings mappings) {
+		AACMappings copy = mappings.snapshot();
+		if (pending == null) {
+			pendingDone = new CompletableFuture<>();
+			writer.execute(this::writePending);
+		} // if
+		// A write that has not started yet just picks up the newer copy.
+		pending = copy;
+		return pendingDone;
+	} //save(AACMappings)
+
+	/**
+	 * Waits for the saves requested so far to finish
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // try/catch
+	} //close()
+
+	/**
+	 * Writes the mappings to a new temporary file and moves it over
+	 * target, so that target is never left half-written
+	 * @param mappings the mappings to write
+	 * @param target the file to replace
+	 * @param snapshot true to write a binary snapshot, false to write text
+	 * @return the identity of the contents written
+	 * @throws IOException if the file cannot be written, in which case
+	 * target is left as it was
+	 */
+	static MappingsJournal.Base replace(AACMappings mappings, Path target, boolean snapshot)
+			throws IOException {
+		Path temp = temporary(target);
+		try {
+			MappingsJournal.Base written = write(mappings, temp, target, snapshot, false);
+			commit(temp, target);
+			return written;
+		} finally {
+			Files.deleteIfExists(temp); // only still there if something failed
+		} // try/finally
+	} //replace(AACMappings, Path, boolean)
+
+	/**
+	 * Writes the mappings to a temporary file (see temporary) and forces
+	 * them to disk. Call commit to move the file into place.
+	 * @param mappings the mappings to write
+	 * @param temp the temporary file to write
+	 * @param target the file they are destined for
+	 * @param snapshot true to write a binary snapshot, false to write text
+	 * @param gzip true to gzip-compress the file
+	 * @return the identity of the contents written, as they will be once
+	 * committed
+	 * @throws IOException if the file cannot be written
+	 */
+	static MappingsJournal.Base write(AACMappings mappings, Path temp, Path target,
+			boolean snapshot, boolean gzip) throws IOException {
+		CRC32 crc = new CRC32();
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			OutputStream file = Channels.newOutputStream(out);
+			GZIPOutputStream compressed = gzip ? new GZIPOutputStream(file, 1 << 16) : null;
+			// The identity covers the uncompressed contents, so count them
+			// before they reach the compressor.
+			CountingOutputStream counted = new CountingOutputStream(
+					new BufferedOutputStream(gzip ? compressed : file, BUFFER_SIZE));
+			OutputStream stream = new CheckedOutputStream(counted, crc);
+			if (snapshot) {
+				MappingsSnapshot.write(mappings, stream);
+			} else {
+				PrintWriter text = new PrintWriter(
+						new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+				mappings.writeText(text);
+				if (text.checkError()) {
+					throw new IOException("Error writing " + temp);
+				} // if
+			} // if/else
+			stream.flush();
+			if (gzip) {
+				compressed.finish();
+			} // if
+			out.force(true);
+			return new MappingsJournal.Base(target, (int) crc.getValue(), counted.count,
+					snapshot, gzip);
+		} // try
+	} //write(AACMappings, Path, Path, boolean, boolean)
+
+	/**
+	 * Atomically replaces target with a temporary file
+	 * @param temp the file written by write
+	 * @param target the file to replace
+	 * @throws IOException if the file cannot be moved
+	 */
+	static void commit(Path temp, Path target) throws IOException {
+		Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		// Make the rename itself durable. Not every platform lets us open
+		// a directory, in which case we have done what we can.
+		Path dir = target.toAbsolutePath().getParent();
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException | UnsupportedOperationException e) {
+			// ignore
+		} // try/catch
+	} //commit(Path, Path)
+
+	/**
+	 * Creates a new, empty temporary file next to target (so that it can
+	 * be renamed over target), with a name no other write shares. The
+	 * caller must delete it if it is not committed.
+	 * @param target the file it will replace
+	 * @return the temporary file
+	 * @throws IOException if the file cannot be created
+	 */
+	static Path temporary(Path target) throws IOException {
+		Path dir = target.toAbsolutePath().getParent();
+		return Files.createTempFile(dir, target.getFileName() + ".", ".tmp");
+	} //temporary(Path)
+
+	/* Private Methods */
+
+	/**
+	 * Deletes the temporary files for target that writes left behind when
+	 * the program stopped in the middle of them. Only files from before
+	 * this program started are deleted, so that a write still in progress
+	 * keeps its file.
+	 */
+	private static void removeLeftovers(Path target) {
+		Path dir = target.toAbsolutePath().getParent();
+		String glob = target.getFileName() + ".*.tmp";
+		long started = ManagementFactory.getRuntimeMXBean().getStartTime();
+		try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(dir, glob)) {
+			for (Path leftover : leftovers) {
+				if (Files.getLastModifiedTime(leftover).toMillis() < started) {
+					Files.deleteIfExists(leftover);
+				} // if
+			} // for
+		} catch (IOException e) {
+			// leftovers only waste space
+		} // try/catch
+	} //removeLeftovers(Path)
+
+	/**
+	 * Writes the latest pending snapshot
+	 */
+	private void writePending() {
+		AACMappings copy;
+		CompletableFuture<Void> done;
+		synchronized (this) {
+			copy = pending;
+			done = pendingDone;
+			pending = null;
+			pendingDone = null;
+		} // synchronized
+		try {
+			replace(copy, target, snapshot);
+			done.complete(null);
+		} catch (IOException e) {
+			System.err.println("Error writing to file: " + e.getMessage());
+			done.completeExceptionally(e);
+		} // try/catch
+	} //writePending()
+} //MappingsSaver
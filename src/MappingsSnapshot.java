@@ -0,0 +1,269 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.util.SymbolTable;
+
+/**
+ * Reads and writes AAC mappings in a compact binary snapshot format,
+ * so that loading does not have to re-split and re-decode text. All
+ * numbers are big-endian. A snapshot holds
+ *
+ * magic "AACS", version (2 bytes), flags (2 bytes)
+ * the number of strings, categories and items (4 bytes each)
+ * the string table: each distinct string once, as a 4-byte length and
+ *   its UTF-8 bytes
+ * the category table: for each category, the string ids of its image
+ *   location and name, the index of its first item and its item count
+ * the item table: for each item, the string ids of its image location
+ *   and text
+ * a CRC-32 of everything before it (4 bytes)
+ *
+ * Running this class converts between the text and snapshot formats:
+ * java MappingsSnapshot input output
+ */
+public class MappingsSnapshot {
+
+	/* Constants */
+
+	/**
+	 * The first four bytes of every snapshot ("AACS").
+	 */
+	static final int MAGIC = 0x41414353;
+
+	/**
+	 * The version of the format that we write.
+	 */
+	static final int VERSION = 1;
+
+	/* Public Methods */
+
+	/**
+	 * Converts a text mappings file to a snapshot, or a snapshot back
+	 * to text
+	 * @param args the input file and the output file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: java MappingsSnapshot input output");
+			System.exit(1);
+		} // if
+		boolean toText = isSnapshot(MappingsParser.read(Paths.get(args[0])));
+		AACMappings mappings = new AACMappings(args[0]);
+		if (toText) {
+			mappings.writeToFile(args[1]);
+		} else {
+			mappings.writeSnapshot(args[1]);
+		} // if/else
+	} //main(String[])
+
+	/**
+	 * Determines whether a buffer holds a snapshot (rather than text)
+	 * @param buffer the contents of a mappings file
+	 * @return true if it starts with the snapshot magic number
+	 */
+	public static boolean isSnapshot(ByteBuffer buffer) {
+		return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+	} //isSnapshot(ByteBuffer)
+
+	/**
+	 * Writes the categories and items of the mappings as a snapshot,
+	 * through a temporary file that then replaces it (see MappingsSaver),
+	 * so a crash never leaves a truncated snapshot
+	 * @param mappings the mappings to write
+	 * @param file the file to write to
+	 * @throws IOException if the file cannot be written, or if the
+	 * mappings have subcategories, which snapshots cannot hold; either
+	 * way the file is left as it was
+	 */
+	public static void write(AACMappings mappings, Path file) throws IOException {
+		MappingsSaver.replace(mappings, file, true);
+	} //write(AACMappings, Path)
+
+	/**
+	 * Writes the categories and items of the mappings as a snapshot to
+	 * a stream, which the caller should buffer and close
+	 * @param mappings the mappings to write
+	 * @param stream the stream to write to
+	 * @throws IOException if the stream cannot be written, or if the
+	 * mappings have subcategories, which snapshots cannot hold
+	 */
+	public static void write(AACMappings mappings, OutputStream stream) throws IOException {
+		Tables tables = new Tables();
+		mappings.forEachCategory(tables::addCategory);
+		if (tables.nested) {
+			throw new IOException("Snapshots cannot hold subcategories; write the mappings as text");
+		} // if
+
+		CRC32 crc = new CRC32();
+		DataOutputStream out = new DataOutputStream(new CheckedOutputStream(stream, crc));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeShort(0); // flags
+		out.writeInt(tables.strings.size());
+		out.writeInt(tables.categoryCount);
+		out.writeInt(tables.itemCount);
+		for (int id = 0; id < tables.strings.size(); id++) {
+			byte[] bytes = tables.strings.nameOf(id).getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} // for
+		for (int i = 0; i < 4 * tables.categoryCount; i++) {
+			out.writeInt(tables.categories[i]);
+		} // for
+		for (int i = 0; i < 2 * tables.itemCount; i++) {
+			out.writeInt(tables.items[i]);
+		} // for
+		// The checksum covers everything written so far, so it goes
+		// straight to the stream rather than through the checked one.
+		out.flush();
+		stream.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+	} //write(AACMappings, OutputStream)
+
+	/**
+	 * Reads a snapshot, calling the handler for each category and item
+	 * in the same order the text format would. Line numbers are not
+	 * meaningful here; the handler is given the index of the category
+	 * or item instead.
+	 * @param buffer the contents of the snapshot
+	 * @param handler the handler to call
+	 * @throws IOException if the snapshot is corrupt or of an unknown version
+	 */
+	public static void read(ByteBuffer buffer, MappingsParser.Handler handler) throws IOException {
+		ByteBuffer in = buffer.slice();
+		if (in.remaining() < 24 || in.getInt(0) != MAGIC) {
+			throw new IOException("Not an AAC snapshot");
+		} // if
+		CRC32 crc = new CRC32();
+		crc.update(in.duplicate().limit(in.limit() - 4));
+		if ((int) crc.getValue() != in.getInt(in.limit() - 4)) {
+			throw new IOException("Snapshot checksum mismatch");
+		} // if
+		try {
+			in.getInt();
+			int version = in.getShort() & 0xffff;
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version);
+			} // if
+			in.getShort(); // flags
+			int stringCount = in.getInt();
+			int categoryCount = in.getInt();
+			int itemCount = in.getInt();
+			String[] strings = new String[checkCount(stringCount, in)];
+			for (int id = 0; id < stringCount; id++) {
+				int length = in.getInt();
+				if (length < 0 || length > in.remaining()) {
+					throw new IOException("Corrupt snapshot string table");
+				} // if
+				byte[] bytes = new byte[length];
+				in.get(bytes);
+				strings[id] = new String(bytes, StandardCharsets.UTF_8);
+			} // for
+			int categoryStart = in.position();
+			int itemStart = categoryStart + 16 * checkCount(categoryCount, in);
+			if ((long) itemStart + 8L * itemCount + 4 != in.limit()) {
+				throw new IOException("Corrupt snapshot tables");
+			} // if
+			for (int c = 0; c < categoryCount; c++) {
+				int row = categoryStart + 16 * c;
+				int first = in.getInt(row + 8);
+				int count = in.getInt(row + 12);
+				if (first < 0 || count < 0 || (long) first + count > itemCount) {
+					throw new IOException("Corrupt snapshot category " + c);
+				} // if
+				handler.category(strings[in.getInt(row)], strings[in.getInt(row + 4)], c);
+				for (int i = first; i < first + count; i++) {
+					int item = itemStart + 8 * i;
+					handler.item(strings[in.getInt(item)], strings[in.getInt(item + 4)], i);
+				} // for
+			} // for
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt snapshot", e);
+		} // try/catch
+	} //read(ByteBuffer, MappingsParser.Handler)
+
+	/* Private Methods */
+
+	/**
+	 * The string, category and item tables of a snapshot, gathered from
+	 * the mappings before any of it is written.
+	 */
+	private static class Tables {
+		/**
+		 * Each distinct string, numbered in the order first seen.
+		 */
+		SymbolTable strings = new SymbolTable();
+
+		/**
+		 * Four ints per category: image location, name, first item and
+		 * item count.
+		 */
+		int[] categories = new int[64];
+		int categoryCount = 0;
+
+		/**
+		 * Two ints per item: image location and text.
+		 */
+		int[] items = new int[256];
+		int itemCount = 0;
+
+		/**
+		 * Whether any category has subcategories.
+		 */
+		boolean nested = false;
+
+		void addCategory(String imageLoc, AACCategory category) {
+			int first = itemCount;
+			category.forEachItem(this::addItem);
+			nested |= category.hasSubcategories();
+			if (4 * categoryCount + 4 > categories.length) {
+				categories = Arrays.copyOf(categories, categories.length * 2);
+			} // if
+			int row = 4 * categoryCount++;
+			categories[row] = intern(imageLoc);
+			categories[row + 1] = intern(category.getCategory());
+			categories[row + 2] = first;
+			categories[row + 3] = itemCount - first;
+		} //addCategory(String, AACCategory)
+
+		void addItem(String imageLoc, String text) {
+			if (2 * itemCount + 2 > items.length) {
+				items = Arrays.copyOf(items, items.length * 2);
+			} // if
+			int row = 2 * itemCount++;
+			items[row] = intern(imageLoc);
+			items[row + 1] = intern(text);
+		} //addItem(String, String)
+
+		/**
+		 * Gets the id of a string, writing null the way the text format
+		 * would ("null")
+		 */
+		int intern(String s) {
+			try {
+				return strings.intern(String.valueOf(s));
+			} catch (NullKeyException e) {
+				throw new IllegalStateException(e); // String.valueOf never returns null
+			} // try/catch
+		} //intern(String)
+	} //Tables
+
+	/**
+	 * Makes sure a count read from a snapshot is plausible
+	 */
+	private static int checkCount(int count, ByteBuffer in) throws IOException {
+		if (count < 0 || count > in.remaining()) {
+			throw new IOException("Corrupt snapshot header");
+		} // if
+		return count;
+	} //checkCount(int, ByteBuffer)
+} //MappingsSnapshot
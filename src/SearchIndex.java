@@ -0,0 +1,567 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * An index of the item texts and category names of some AACMappings,
+ * for finding an item without paging through the categories. Every word
+ * of every text is added to a trie whose nodes list the entries with a
+ * word starting with that node's prefix, so a prefix query only has to
+ * walk down the trie and pick the best few entries from one list. A
+ * query may also allow a few typos, in which case the trie is searched
+ * with a bounded edit distance.
+ *
+ * Queries and texts are matched word by word, ignoring case and
+ * punctuation: every word of the query must start a word of the text.
+ * The best matches have the fewest typos, then are categories rather
+ * than items, then have the shortest text.
+ */
+public class SearchIndex {
+
+	/* Constants */
+
+	/**
+	 * The fewest removed entries worth rebuilding the index to drop.
+	 */
+	private static final int MIN_COMPACT = 64;
+
+	/* Fields */
+
+	/**
+	 * The root of the trie of words.
+	 */
+	private Node root = new Node();
+
+	/**
+	 * The image location of each entry's category, or the empty string
+	 * for a category itself (which is on the home page), by entry id.
+	 */
+	private String[] categories = new String[16];
+
+	/**
+	 * The image location of each entry, by entry id.
+	 */
+	private String[] imageLocs = new String[16];
+
+	/**
+	 * The text (or category name) of each entry, by entry id.
+	 */
+	private String[] texts = new String[16];
+
+	/**
+	 * Whether each entry stands for a category or subcategory rather
+	 * than an item, by entry id.
+	 */
+	private boolean[] isCategory = new boolean[16];
+
+	/**
+	 * Whether each entry has been removed (or replaced), by entry id.
+	 */
+	private boolean[] removed = new boolean[16];
+
+	/**
+	 * The number of entries ever added.
+	 */
+	private int next = 0;
+
+	/**
+	 * The number of entries that have not been removed.
+	 */
+	private int live = 0;
+
+	/**
+	 * The id of each entry that has not been removed, by its category and
+	 * image location (see keyOf).
+	 */
+	private AssociativeArray<String, Integer> ids = new AssociativeArray<>();
+
+	/* Public Methods */
+
+	/**
+	 * Adds an item, a category or a subcategory, replacing what was there
+	 * for the same image in the same category
+	 * @param category the image location of the item's category (see
+	 * AACMappings.getCategory), or the empty string to add a category
+	 * @param imageLoc the location of the image
+	 * @param text the item's text or the category's name
+	 * @param isCategory whether the image stands for a category or
+	 * subcategory (which rank above items)
+	 */
+	public void add(String category, String imageLoc, String text, boolean isCategory) {
+		drop(category, imageLoc);
+		compactIfNeeded();
+		if (next == texts.length) {
+			int capacity = next * 2;
+			categories = Arrays.copyOf(categories, capacity);
+			imageLocs = Arrays.copyOf(imageLocs, capacity);
+			texts = Arrays.copyOf(texts, capacity);
+			this.isCategory = Arrays.copyOf(this.isCategory, capacity);
+			removed = Arrays.copyOf(removed, capacity);
+		} // if
+		int id = next++;
+		categories[id] = category;
+		imageLocs[id] = imageLoc;
+		texts[id] = text;
+		this.isCategory[id] = isCategory;
+		live++;
+		try {
+			ids.set(keyOf(category, imageLoc), id);
+		} catch (NullKeyException e) {
+			// keyOf never returns null
+		} // try/catch
+		for (String word : words(text)) {
+			Node node = root;
+			for (int i = 0; i < word.length(); i++) {
+				node = node.child(word.charAt(i), true);
+				node.add(id);
+			} // for
+		} // for
+	} //add(String, String, String, boolean)
+
+	/**
+	 * Removes an item, or a category. Does nothing if it is not there.
+	 * Removing a category does not remove its items; see removeCategory.
+	 * @param category the image location of the item's category, or the
+	 * empty string for a category
+	 * @param imageLoc the location of the image
+	 */
+	public void remove(String category, String imageLoc) {
+		drop(category, imageLoc);
+		compactIfNeeded();
+	} //remove(String, String)
+
+	/**
+	 * Removes a category, or a subcategory, and all of its items (along
+	 * with those of its own subcategories)
+	 * @param category the image location of the category, or the image
+	 * locations leading to a subcategory, separated by
+	 * AACMappings.PATH_SEPARATOR
+	 */
+	public void removeCategory(String category) {
+		int end = category.lastIndexOf(AACMappings.PATH_SEPARATOR);
+		if (end < 0) {
+			drop("", category);
+		} else {
+			drop(category.substring(0, end), category.substring(end + 1));
+		} // if/else
+		String nested = category + AACMappings.PATH_SEPARATOR;
+		for (int id = 0; id < next; id++) {
+			if (!removed[id] && (categories[id].equals(category)
+					|| categories[id].startsWith(nested))) {
+				drop(categories[id], imageLocs[id]);
+			} // if
+		} // for
+		compactIfNeeded();
+	} //removeCategory(String)
+
+	/**
+	 * Finds the best few entries with a word starting with each word of
+	 * the query
+	 * @param query the words to look for
+	 * @param k the most entries to return
+	 * @return the best (at most k) entries, best first
+	 */
+	public Hit[] search(String query, int k) {
+		return search(query, k, 0);
+	} //search(String, int)
+
+	/**
+	 * Finds the best few entries with a word starting with each word of
+	 * the query, allowing some typos in the last word of the query (e.g.,
+	 * the word being typed)
+	 * @param query the words to look for
+	 * @param k the most entries to return
+	 * @param maxEdits the most letters of the last word that may be added,
+	 * removed or changed to match; no more than a third of its letters
+	 * (rounded down) are, since a short word within a few edits of
+	 * nearly everything would match nearly everything
+	 * @return the best (at most k) entries, best first
+	 */
+	public Hit[] search(String query, int k, int maxEdits) {
+		String[] words = words(query);
+		if (words.length == 0 || k <= 0) {
+			return new Hit[0];
+		} // if
+		maxEdits = Math.min(maxEdits, words[words.length - 1].length() / 3);
+		// Every word but the last must start a word of the text exactly
+		Node[] nodes = new Node[words.length];
+		for (int w = 0; w < words.length; w++) {
+			nodes[w] = find(words[w]);
+			if (nodes[w] == null && (w < words.length - 1 || maxEdits <= 0)) {
+				return new Hit[0];
+			} // if
+		} // for
+		Ranking ranking = new Ranking(k);
+		if (maxEdits <= 0) {
+			// Go through the shortest list, checking the others
+			int driver = 0;
+			for (int w = 1; w < nodes.length; w++) {
+				if (nodes[w].count < nodes[driver].count) {
+					driver = w;
+				} // if
+			} // for
+			Node node = nodes[driver];
+			nodes[driver] = null;
+			for (int i = 0; i < node.count; i++) {
+				consider(ranking, node.entries[i], 0, nodes);
+			} // for
+		} else {
+			String last = words[words.length - 1];
+			nodes[words.length - 1] = null;
+			// The nodes within maxEdits of the last word, by distance
+			ArrayList<ArrayList<Node>> matches = new ArrayList<>();
+			for (int d = 0; d <= maxEdits; d++) {
+				matches.add(new ArrayList<>());
+			} // for
+			int[] row = new int[last.length() + 1];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = i;
+			} // for
+			for (int c = 0; c < root.size; c++) {
+				fuzzy(root.children[c], root.keys[c], last, row, maxEdits, maxEdits + 1, matches);
+			} // for
+			// The closest first, so an entry found again further away is
+			// already ranked (or would not be)
+			for (int d = 0; d <= maxEdits && ranking.wantsDistance(d); d++) {
+				for (Node node : matches.get(d)) {
+					for (int i = 0; i < node.count; i++) {
+						consider(ranking, node.entries[i], d, nodes);
+					} // for
+				} // for
+			} // for
+		} // if/else
+		Hit[] hits = new Hit[ranking.size];
+		for (int i = 0; i < hits.length; i++) {
+			int id = ranking.ids[i];
+			hits[i] = new Hit(categories[id], imageLocs[id], texts[id], ranking.distances[i]);
+		} // for
+		return hits;
+	} //search(String, int, int)
+
+	/**
+	 * Gets the number of entries in the index
+	 * @return the number of items and categories
+	 */
+	public int size() {
+		return live;
+	} //size()
+
+	/* Private Methods */
+
+	/**
+	 * Marks an entry as removed, leaving it in the trie's lists until
+	 * the next compaction. Does nothing if it is not there.
+	 */
+	private void drop(String category, String imageLoc) {
+		String key = keyOf(category, imageLoc);
+		Integer id = ids.getOrDefault(key, null);
+		if (id != null) {
+			removed[id] = true;
+			live--;
+			ids.remove(key);
+		} // if
+	} //drop(String, String)
+
+	/**
+	 * Rebuilds the index from its live entries once removed ones make up
+	 * most of it, so that searches do not keep skipping them and edits do
+	 * not keep growing it. Entries keep their order, and so their ties.
+	 */
+	private void compactIfNeeded() {
+		int dead = next - live;
+		if (dead < MIN_COMPACT || dead <= live) {
+			return;
+		} // if
+		String[] oldCategories = categories;
+		String[] oldImageLocs = imageLocs;
+		String[] oldTexts = texts;
+		boolean[] oldIsCategory = isCategory;
+		boolean[] oldRemoved = removed;
+		int oldNext = next;
+		int capacity = Math.max(16, Integer.highestOneBit(live) * 2);
+		root = new Node();
+		categories = new String[capacity];
+		imageLocs = new String[capacity];
+		texts = new String[capacity];
+		isCategory = new boolean[capacity];
+		removed = new boolean[capacity];
+		next = 0;
+		live = 0;
+		ids = new AssociativeArray<>();
+		for (int id = 0; id < oldNext; id++) {
+			if (!oldRemoved[id]) {
+				add(oldCategories[id], oldImageLocs[id], oldTexts[id], oldIsCategory[id]);
+			} // if
+		} // for
+	} //compactIfNeeded()
+
+	/**
+	 * Finds the node for a prefix
+	 * @return the node, or null if no word starts with the prefix
+	 */
+	private Node find(String prefix) {
+		Node node = root;
+		for (int i = 0; i < prefix.length() && node != null; i++) {
+			node = node.child(prefix.charAt(i), false);
+		} // for
+		return node;
+	} //find(String)
+
+	/**
+	 * Ranks an entry found for one word of a query, if it has not been
+	 * removed, is not ranked already (found closer, or by another word of
+	 * its text) and is listed by the nodes of the other words (which are
+	 * null for the words already matched). The lists are in order of id,
+	 * so each check is a binary search.
+	 */
+	private void consider(Ranking ranking, int id, int distance, Node[] others) {
+		if (removed[id] || !ranking.wants(distance, isCategory[id], texts[id].length())
+				|| ranking.contains(id)) {
+			return;
+		} // if
+		for (Node other : others) {
+			if (other != null && Arrays.binarySearch(other.entries, 0, other.count, id) < 0) {
+				return;
+			} // if
+		} // for
+		ranking.add(id, distance, isCategory[id], texts[id].length());
+	} //consider(Ranking, int, int, Node[])
+
+	/**
+	 * Searches the trie below a node for prefixes within maxEdits of the
+	 * query word, adding their nodes to matches by distance. The row holds
+	 * the edit distances from each prefix of the query to the node's
+	 * parent's prefix; ancestor is the distance at the nearest ancestor
+	 * that matched (whose entries include ours), so only closer matches
+	 * below it are added.
+	 */
+	private static void fuzzy(Node node, char letter, String query, int[] above,
+			int maxEdits, int ancestor, ArrayList<ArrayList<Node>> matches) {
+		int[] row = new int[above.length];
+		row[0] = above[0] + 1;
+		int min = row[0];
+		for (int i = 1; i < row.length; i++) {
+			int change = above[i - 1] + (query.charAt(i - 1) == letter ? 0 : 1);
+			row[i] = Math.min(change, Math.min(above[i] + 1, row[i - 1] + 1));
+			min = Math.min(min, row[i]);
+		} // for
+		if (min > maxEdits) {
+			return; // No word below here can be close enough
+		} // if
+		int distance = row[row.length - 1];
+		if (distance < ancestor) {
+			matches.get(distance).add(node);
+			ancestor = distance;
+			if (distance == 0) {
+				return; // Nothing below can do better
+			} // if
+		} // if
+		for (int c = 0; c < node.size; c++) {
+			fuzzy(node.children[c], node.keys[c], query, row, maxEdits, ancestor, matches);
+		} // for
+	} //fuzzy(Node, char, String, int[], int, int, ArrayList)
+
+	/**
+	 * Gets the key of an entry in ids
+	 */
+	private static String keyOf(String category, String imageLoc) {
+		return category + "\n" + imageLoc;
+	} //keyOf(String, String)
+
+	/**
+	 * Splits text into lower case words of letters and digits
+	 */
+	static String[] words(String text) {
+		String[] words = new String[4];
+		int count = 0;
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start < 0) {
+				start = i;
+			} else if (!inWord && start >= 0) {
+				if (count == words.length) {
+					words = Arrays.copyOf(words, count * 2);
+				} // if
+				words[count++] = text.substring(start, i).toLowerCase();
+				start = -1;
+			} // if
+		} // for
+		return Arrays.copyOf(words, count);
+	} //words(String)
+
+	/* Public Classes */
+
+	/**
+	 * An entry found by a search.
+	 */
+	public static class Hit {
+		/**
+		 * The image location of the item's category, or the empty string
+		 * if this is a category.
+		 */
+		public final String category;
+
+		/**
+		 * The location of the image.
+		 */
+		public final String imageLoc;
+
+		/**
+		 * The item's text or the category's name.
+		 */
+		public final String text;
+
+		/**
+		 * The number of typos in the query's last word.
+		 */
+		public final int distance;
+
+		Hit(String category, String imageLoc, String text, int distance) {
+			this.category = category;
+			this.imageLoc = imageLoc;
+			this.text = text;
+			this.distance = distance;
+		} //Hit(String, String, String, int)
+
+		/**
+		 * Describes the hit
+		 * @return the category, image and text
+		 */
+		@Override
+		public String toString() {
+			return (category.isEmpty() ? ""
+					: category.replace(AACMappings.PATH_SEPARATOR, " > ") + " > ")
+					+ imageLoc + " \"" + text + "\"";
+		} //toString()
+	} //Hit
+
+	/* Private Classes */
+
+	/**
+	 * A node of the trie: its children, by letter, and the entries with a
+	 * word that starts with its prefix, in the order they were added.
+	 */
+	private static class Node {
+		char[] keys = new char[2];
+		Node[] children = new Node[2];
+		int size = 0;
+		int[] entries = new int[2];
+		int count = 0;
+
+		/**
+		 * Gets the child for a letter, adding it if asked to
+		 */
+		Node child(char letter, boolean create) {
+			for (int i = 0; i < size; i++) {
+				if (keys[i] == letter) {
+					return children[i];
+				} // if
+			} // for
+			if (!create) {
+				return null;
+			} // if
+			if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				children = Arrays.copyOf(children, size * 2);
+			} // if
+			keys[size] = letter;
+			children[size] = new Node();
+			return children[size++];
+		} //child(char, boolean)
+
+		/**
+		 * Adds an entry, unless it was just added (by another word of the
+		 * same text with the same prefix)
+		 */
+		void add(int id) {
+			if (count > 0 && entries[count - 1] == id) {
+				return;
+			} // if
+			if (count == entries.length) {
+				entries = Arrays.copyOf(entries, count * 2);
+			} // if
+			entries[count++] = id;
+		} //add(int)
+	} //Node
+
+	/**
+	 * The best k entries seen so far, best first.
+	 */
+	private static class Ranking {
+		final int[] ids;
+		final int[] distances;
+		final boolean[] isCategory;
+		final int[] lengths;
+		int size = 0;
+
+		Ranking(int k) {
+			ids = new int[k];
+			distances = new int[k];
+			isCategory = new boolean[k];
+			lengths = new int[k];
+		} //Ranking(int)
+
+		/**
+		 * Determines whether some entry this many edits away could make
+		 * the top k
+		 */
+		boolean wantsDistance(int distance) {
+			return size < ids.length || distance < distances[size - 1];
+		} //wantsDistance(int)
+
+		/**
+		 * Determines whether an entry is in the top k
+		 */
+		boolean contains(int id) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == id) {
+					return true;
+				} // if
+			} // for
+			return false;
+		} //contains(int)
+
+		/**
+		 * Determines whether an entry would make the top k
+		 */
+		boolean wants(int distance, boolean category, int length) {
+			return size < ids.length || better(distance, category, length, size - 1);
+		} //wants(int, boolean, int)
+
+		/**
+		 * Adds an entry, which must make the top k, in its place
+		 */
+		void add(int id, int distance, boolean category, int length) {
+			int i = Math.min(size, ids.length - 1);
+			while (i > 0 && better(distance, category, length, i - 1)) {
+				ids[i] = ids[i - 1];
+				distances[i] = distances[i - 1];
+				isCategory[i] = isCategory[i - 1];
+				lengths[i] = lengths[i - 1];
+				i--;
+			} // while
+			ids[i] = id;
+			distances[i] = distance;
+			isCategory[i] = category;
+			lengths[i] = length;
+			size = Math.min(size + 1, ids.length);
+		} //add(int, int, boolean, int)
+
+		/**
+		 * Determines whether an entry beats the one at index i (ties go
+		 * to the one added first)
+		 */
+		private boolean better(int distance, boolean category, int length, int i) {
+			if (distance != distances[i]) {
+				return distance < distances[i];
+			} // if
+			if (category != isCategory[i]) {
+				return category;
+			} // if
+			return length < lengths[i];
+		} //better(int, boolean, int, int)
+	} //Ranking
+} //SearchIndex
@@ -0,0 +1,432 @@
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.speech.synthesis.SpeakableAdapter;
+import javax.speech.synthesis.SpeakableEvent;
+import javax.speech.synthesis.Synthesizer;
+
+/**
+ * Speaks text on a background thread, so that the Swing event thread
+ * never waits for the synthesizer. Requests are queued and spoken in
+ * order. A request may instead barge in: it cancels the utterance being
+ * spoken and drops the ones waiting, so a new tap is heard right away.
+ * A request for the same text as the last one waiting is coalesced with
+ * it (e.g., a button tapped twice in a row).
+ *
+ * The synthesizer may still be starting up when the queue is created;
+ * requests made before it is ready wait in the queue until it is.
+ *
+ * Given an AudioClipCache, the queue plays the cached clip for a text
+ * instead of synthesizing it, and asks the cache to render the clips it
+ * did not have, so the next request for them plays right away.
+ *
+ * The queue keeps track of how many utterances are waiting and how long
+ * each took from the request to its first audio.
+ */
+public class SpeechQueue implements Closeable {
+
+	/* Fields */
+
+	/**
+	 * The synthesizer that speaks the text, once it has been allocated.
+	 */
+	private final CompletableFuture<Synthesizer> synthesizer;
+
+	/**
+	 * Whether speak cancels what is being said by default.
+	 */
+	private final boolean bargeIn;
+
+	/**
+	 * Runs the utterances, one at a time.
+	 */
+	private final ExecutorService speaker;
+
+	/**
+	 * The utterances waiting to be spoken, oldest first.
+	 */
+	private final ArrayDeque<Utterance> waiting = new ArrayDeque<>();
+
+	/**
+	 * The clips to play instead of synthesizing, or null for none.
+	 */
+	private final AudioClipCache clips;
+
+	/**
+	 * The utterance being spoken, or null if none is.
+	 */
+	private Utterance current;
+
+	/**
+	 * The most utterances that have been waiting or speaking at once.
+	 */
+	private int maxDepth = 0;
+
+	/**
+	 * Guards the times to first audio, which are recorded on the
+	 * synthesizer's thread (so must not wait for the queue's lock).
+	 */
+	private final Object latencies = new Object();
+
+	/**
+	 * The number of utterances that have started to play.
+	 */
+	private long started = 0;
+
+	/**
+	 * The number of utterances dropped or cut off by a barge-in.
+	 */
+	private long cancelled = 0;
+
+	/**
+	 * The time from request to first audio of the last utterance that
+	 * started, in nanoseconds.
+	 */
+	private long lastLatency = -1;
+
+	/**
+	 * The total time from request to first audio, in nanoseconds.
+	 */
+	private long totalLatency = 0;
+
+	/* Constructors */
+
+	/**
+	 * Creates a queue that speaks with an allocated synthesizer
+	 * @param synthesizer the synthesizer
+	 * @param bargeIn true if a new request should cut off what is being
+	 * said, false if it should wait for it
+	 */
+	public SpeechQueue(Synthesizer synthesizer, boolean bargeIn) {
+		this(CompletableFuture.completedFuture(synthesizer), bargeIn);
+	} //SpeechQueue(Synthesizer, boolean)
+
+	/**
+	 * Creates a queue that speaks with a synthesizer that may still be
+	 * starting up
+	 * @param synthesizer completes with the allocated synthesizer (or
+	 * exceptionally, if it could not be allocated)
+	 * @param bargeIn true if a new request should cut off what is being
+	 * said, false if it should wait for it
+	 */
+	public SpeechQueue(CompletableFuture<Synthesizer> synthesizer, boolean bargeIn) {
+		this(synthesizer, null, bargeIn);
+	} //SpeechQueue(CompletableFuture, boolean)
+
+	/**
+	 * Creates a queue that plays cached clips when it can and otherwise
+	 * speaks with a synthesizer that may still be starting up
+	 * @param synthesizer completes with the allocated synthesizer (or
+	 * exceptionally, if it could not be allocated)
+	 * @param clips the clips to play, or null to always synthesize
+	 * @param bargeIn true if a new request should cut off what is being
+	 * said, false if it should wait for it
+	 */
+	public SpeechQueue(CompletableFuture<Synthesizer> synthesizer, AudioClipCache clips,
+			boolean bargeIn) {
+		this.synthesizer = synthesizer;
+		this.clips = clips;
+		this.bargeIn = bargeIn;
+		this.speaker = Executors.newSingleThreadExecutor((r) -> {
+			Thread t = new Thread(r, "speech");
+			t.setDaemon(true);
+			return t;
+		});
+	} //SpeechQueue(CompletableFuture, AudioClipCache, boolean)
+
+	/* Public Methods */
+
+	/**
+	 * Speaks the text in the background, barging in or queueing as set
+	 * when the queue was created
+	 * @param text the text to speak
+	 * @return a future that completes once the text has been said, cut
+	 * off or dropped, with its time from request to first audio in
+	 * nanoseconds (-1 if it never started)
+	 */
+	public CompletableFuture<Long> speak(String text) {
+		return speak(text, bargeIn);
+	} //speak(String)
+
+	/**
+	 * Speaks the text in the background
+	 * @param text the text to speak
+	 * @param bargeIn true to cut off what is being said and drop what is
+	 * waiting, false to be spoken after them
+	 * @return a future that completes once the text has been said, cut
+	 * off or dropped, with its time from request to first audio in
+	 * nanoseconds (-1 if it never started)
+	 */
+	public synchronized CompletableFuture<Long> speak(String text, boolean bargeIn) {
+		if (bargeIn) {
+			cancel();
+		} else if (!waiting.isEmpty() && waiting.peekLast().text.equals(text)) {
+			return waiting.peekLast().done; // Already going to be said next
+		} // if
+		Utterance utterance = new Utterance(text);
+		waiting.addLast(utterance);
+		maxDepth = Math.max(maxDepth, getQueueDepth());
+		speaker.execute(this::speakNext);
+		return utterance.done;
+	} //speak(String, boolean)
+
+	/**
+	 * Stops what is being said and drops what is waiting to be said
+	 */
+	public synchronized void cancel() {
+		dropWaiting();
+		if (current != null) {
+			cancelled++;
+			current.cancelled = true;
+			Synthesizer synth = synthesizer.getNow(null);
+			if (synth != null) {
+				try {
+					synth.cancelAll();
+				} catch (Exception e) {
+					System.err.println("Error cancelling speech: " + e.getMessage());
+				} // try/catch
+			} // if
+		} // if
+	} //cancel()
+
+	/**
+	 * Gets the number of utterances waiting or being spoken
+	 * @return the queue depth
+	 */
+	public synchronized int getQueueDepth() {
+		return waiting.size() + (current != null ? 1 : 0);
+	} //getQueueDepth()
+
+	/**
+	 * Gets the most utterances that have been waiting or being spoken at
+	 * once
+	 * @return the largest queue depth
+	 */
+	public synchronized int getMaxQueueDepth() {
+		return maxDepth;
+	} //getMaxQueueDepth()
+
+	/**
+	 * Gets the time from request to first audio of the last utterance
+	 * that started to play
+	 * @return the time in nanoseconds, or -1 if none has started
+	 */
+	public long getLastTimeToFirstAudio() {
+		synchronized (latencies) {
+			return lastLatency;
+		} // synchronized
+	} //getLastTimeToFirstAudio()
+
+	/**
+	 * Gets the average time from request to first audio
+	 * @return the time in nanoseconds, or -1 if nothing has started
+	 */
+	public long getAverageTimeToFirstAudio() {
+		synchronized (latencies) {
+			return started == 0 ? -1 : totalLatency / started;
+		} // synchronized
+	} //getAverageTimeToFirstAudio()
+
+	/**
+	 * Gets the number of utterances that have started to play
+	 * @return the number of utterances
+	 */
+	public long getStarted() {
+		synchronized (latencies) {
+			return started;
+		} // synchronized
+	} //getStarted()
+
+	/**
+	 * Describes how the queue is doing
+	 * @return the queue depth, counts and times to first audio
+	 */
+	@Override
+	public synchronized String toString() {
+		return "SpeechQueue[depth=" + getQueueDepth() + ", maxDepth=" + maxDepth
+				+ ", started=" + getStarted() + ", cancelled=" + cancelled
+				+ ", lastFirstAudioMs=" + getLastTimeToFirstAudio() / 1000000.0
+				+ ", avgFirstAudioMs=" + getAverageTimeToFirstAudio() / 1000000.0 + "]";
+	} //toString()
+
+	/**
+	 * Drops what is waiting to be said and stops the background thread
+	 * once the current utterance ends
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			dropWaiting();
+		} // synchronized
+		speaker.shutdown();
+		try {
+			speaker.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} // try/catch
+	} //close()
+
+	/* Private Methods */
+
+	/**
+	 * Speaks the oldest waiting utterance, if a barge-in has not dropped
+	 * it, and waits until it has been said (or cut off). There is one
+	 * call for each utterance queued, so calls may find nothing to do.
+	 */
+	private void speakNext() {
+		Utterance next;
+		synchronized (this) {
+			next = waiting.pollFirst();
+			if (next == null) {
+				return;
+			} // if
+			current = next;
+		} // synchronized
+		try {
+			AudioClipCache.Pcm clip = clips == null ? null : clips.get(next.text);
+			if (clip == null && clips != null) {
+				// Render it for next time
+				clips.prerender(List.of(next.text));
+			} // if
+			if (clip == null || !play(clip, next)) {
+				synthesize(next);
+			} // if
+		} catch (Exception e) {
+			System.err.println("Error speaking: " + e.getMessage());
+		} finally {
+			synchronized (this) {
+				current = null;
+			} // synchronized
+			next.done.complete(next.firstAudio);
+		} // try/finally
+	} //speakNext()
+
+	/**
+	 * Speaks an utterance with the synthesizer (waiting for it to start
+	 * up, if need be) and waits until it has been said or cut off
+	 */
+	private void synthesize(Utterance next) throws Exception {
+		Synthesizer synthesizer = this.synthesizer.join();
+		synchronized (this) {
+			// Checked under the lock, so a barge-in cannot slip in between
+			// checking and handing it to the synthesizer
+			if (next.cancelled) {
+				return;
+			} // if
+			synthesizer.speakPlainText(next.text, new SpeakableAdapter() {
+				@Override
+				public void speakableStarted(SpeakableEvent e) {
+					started(next);
+				}
+			});
+		} // synchronized
+		synthesizer.waitEngineState(Synthesizer.QUEUE_EMPTY);
+	} //synthesize(Utterance)
+
+	/**
+	 * Plays a clip a little at a time, stopping early if the utterance is
+	 * cut off
+	 * @return false if there is no audio line to play it on
+	 */
+	private boolean play(AudioClipCache.Pcm clip, Utterance next) {
+		SourceDataLine line;
+		try {
+			line = AudioSystem.getSourceDataLine(clip.format);
+			line.open(clip.format);
+		} catch (LineUnavailableException | IllegalArgumentException e) {
+			System.err.println("Error playing audio: " + e.getMessage());
+			return false;
+		} // try/catch
+		try {
+			line.start();
+			// About a twentieth of a second at a time, in whole frames
+			int frameSize = clip.format.getFrameSize();
+			int chunk = Math.max(1, (int) (clip.format.getFrameRate() / 20)) * frameSize;
+			for (int offset = 0; offset < clip.data.length && !next.cancelled; offset += chunk) {
+				line.write(clip.data, offset, Math.min(chunk, clip.data.length - offset));
+				if (offset == 0) {
+					started(next);
+				} // if
+			} // for
+			if (next.cancelled) {
+				line.stop();
+				line.flush();
+			} else {
+				line.drain();
+			} // if
+		} finally {
+			line.close();
+		} // try/finally
+		return true;
+	} //play(AudioClipCache.Pcm, Utterance)
+
+	/**
+	 * Drops the utterances waiting to be said. Only called with the lock
+	 * held.
+	 */
+	private void dropWaiting() {
+		cancelled += waiting.size();
+		for (Utterance utterance : waiting) {
+			utterance.done.complete(-1L);
+		} // for
+		waiting.clear();
+	} //dropWaiting()
+
+	/**
+	 * Records the time to first audio of an utterance that started
+	 */
+	private void started(Utterance utterance) {
+		long latency = System.nanoTime() - utterance.requested;
+		utterance.firstAudio = latency;
+		synchronized (latencies) {
+			lastLatency = latency;
+			totalLatency += latency;
+			started++;
+		} // synchronized
+	} //started(Utterance)
+
+	/* Private Classes */
+
+	/**
+	 * A request to speak some text.
+	 */
+	private static class Utterance {
+		/**
+		 * The text to speak.
+		 */
+		final String text;
+
+		/**
+		 * When it was requested, from System.nanoTime.
+		 */
+		final long requested = System.nanoTime();
+
+		/**
+		 * Whether it has been cut off (or dropped) by a barge-in.
+		 */
+		volatile boolean cancelled = false;
+
+		/**
+		 * The time from request to first audio, in nanoseconds, or -1 if
+		 * it has not started.
+		 */
+		volatile long firstAudio = -1;
+
+		/**
+		 * Completed once it has been said, cut off or dropped.
+		 */
+		final CompletableFuture<Long> done = new CompletableFuture<>();
+
+		Utterance(String text) {
+			this.text = text;
+		} //Utterance(String)
+	} //Utterance
+} //SpeechQueue
@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import edu.grinnell.csc207.util.AssociativeArray;
+import edu.grinnell.csc207.util.NullKeyException;
+
+/**
+ * A reverse index of some AACMappings: for each text that items speak,
+ * where those items are. Texts are compared ignoring case and extra
+ * spaces, so "Yes" and "yes " count as the same text.
+ */
+public class TextIndex {
+
+	/* Fields */
+
+	/**
+	 * The items that speak each text, by normalized text.
+	 */
+	private final AssociativeArray<String, Location[]> locations = new AssociativeArray<>();
+
+	/**
+	 * The normalized text of each item, by category and image location
+	 * (see keyOf).
+	 */
+	private final AssociativeArray<String, String> texts = new AssociativeArray<>();
+
+	/* Public Methods */
+
+	/**
+	 * Adds an item, replacing what was there for the same image in the
+	 * same category
+	 * @param category the image location of the item's category (see
+	 * AACMappings.getCategory)
+	 * @param imageLoc the location of the item's image
+	 * @param text the text the item speaks
+	 */
+	public void add(String category, String imageLoc, String text) {
+		remove(category, imageLoc);
+		String normal = normalize(text);
+		Location[] where = locations.getOrDefault(normal, new Location[0]);
+		where = Arrays.copyOf(where, where.length + 1);
+		where[where.length - 1] = new Location(category, imageLoc);
+		try {
+			locations.set(normal, where);
+			texts.set(keyOf(category, imageLoc), normal);
+		} catch (NullKeyException e) {
+			// neither key is ever null
+		} // try/catch
+	} //add(String, String, String)
+
+	/**
+	 * Removes an item. Does nothing if it is not there.
+	 * @param category the image location of the item's category
+	 * @param imageLoc the location of the item's image
+	 */
+	public void remove(String category, String imageLoc) {
+		String key = keyOf(category, imageLoc);
+		String normal = texts.getOrDefault(key, null);
+		if (normal == null) {
+			return;
+		} // if
+		texts.remove(key);
+		Location[] where = locations.getOrDefault(normal, new Location[0]);
+		Location[] rest = new Location[where.length];
+		int count = 0;
+		for (Location location : where) {
+			if (!location.category.equals(category) || !location.imageLoc.equals(imageLoc)) {
+				rest[count++] = location;
+			} // if
+		} // for
+		try {
+			if (count == 0) {
+				locations.remove(normal);
+			} else {
+				locations.set(normal, Arrays.copyOf(rest, count));
+			} // if/else
+		} catch (NullKeyException e) {
+			// normal is never null
+		} // try/catch
+	} //remove(String, String)
+
+	/**
+	 * Removes all of the items in a category, or a subcategory, along with
+	 * those of its own subcategories
+	 * @param category the image location of the category, or the image
+	 * locations leading to a subcategory, separated by
+	 * AACMappings.PATH_SEPARATOR
+	 */
+	public void removeCategory(String category) {
+		// Also the start of the keys of its subcategories' items
+		String prefix = keyOf(category, "");
+		ArrayList<String> keys = new ArrayList<>();
+		texts.forEach((key, text) -> {
+			if (key.startsWith(prefix)) {
+				keys.add(key);
+			} // if
+		});
+		for (String key : keys) {
+			int newline = key.lastIndexOf('\n');
+			remove(key.substring(0, newline), key.substring(newline + 1));
+		} // for
+	} //removeCategory(String)
+
+	/**
+	 * Finds the items that speak a text
+	 * @param text the text
+	 * @return where the items are, in the order they were added (empty if
+	 * there are none)
+	 */
+	public Location[] find(String text) {
+		return locations.getOrDefault(normalize(text), new Location[0]).clone();
+	} //find(String)
+
+	/**
+	 * Finds the texts spoken by more than one item
+	 * @return where the items that speak each such text are, by text
+	 */
+	public AssociativeArray<String, Location[]> duplicates() {
+		AssociativeArray<String, Location[]> duplicates = new AssociativeArray<>();
+		locations.forEach((text, where) -> {
+			if (where.length > 1) {
+				try {
+					duplicates.set(text, where.clone());
+				} catch (NullKeyException e) {
+					// text is never null
+				} // try/catch
+			} // if
+		});
+		return duplicates;
+	} //duplicates()
+
+	/**
+	 * Gets the number of different texts
+	 * @return the number of texts
+	 */
+	public int size() {
+		return locations.size();
+	} //size()
+
+	/* Private Methods */
+
+	/**
+	 * Gets the key of an item in texts
+	 */
+	private static String keyOf(String category, String imageLoc) {
+		return category + "\n" + imageLoc;
+	} //keyOf(String, String)
+
+	/**
+	 * Puts text in the form it is indexed by: lower case, with words
+	 * separated by single spaces
+	 */
+	static String normalize(String text) {
+		return String.join(" ", text.trim().toLowerCase().split("\\s+"));
+	} //normalize(String)
+
+	/* Public Classes */
+
+	/**
+	 * Where an item is: its category and image.
+	 */
+	public static class Location {
+		/**
+		 * The image location of the item's category.
+		 */
+		public final String category;
+
+		/**
+		 * The location of the item's image.
+		 */
+		public final String imageLoc;
+
+		Location(String category, String imageLoc) {
+			this.category = category;
+			this.imageLoc = imageLoc;
+		} //Location(String, String)
+
+		/**
+		 * Describes the location
+		 * @return the category and image
+		 */
+		@Override
+		public String toString() {
+			return category.replace(AACMappings.PATH_SEPARATOR, " > ") + " > " + imageLoc;
+		} //toString()
+	} //Location
+} //TextIndex
@@ -2,18 +2,46 @@ package edu.grinnell.csc207.util;
 
 import static java.lang.reflect.Array.newInstance;
 
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * A basic implementation of Associative Arrays with keys of type K
  * and values of type V. Associative Arrays store key/value pairs
  * and permit you to look up values by key.
  *
+ * The pairs are kept in insertion order in `pairs` and are indexed by
+ * an open-addressing hash table (`slots`), so `set`, `get` and `hasKey`
+ * take expected constant time while `getKeys` still reports keys in the
+ * order they were first added. When the table grows, the old table is
+ * drained a few entries at a time, on each later `set` or `remove`,
+ * rather than all at once.
+ *
+ * Removing a key just clears its pair (leaving a tombstone) rather than
+ * shifting the pairs after it, so remove takes constant time. The
+ * cleared pairs are squeezed out by `compact`, which runs on its own
+ * once tombstones outnumber live pairs.
+ *
+ * Only the methods that change the array restructure it: lookups and
+ * traversals skip tombstones (and look in both tables during a resize)
+ * instead, so several threads may read an array that no thread is
+ * changing.
+ *
  * @param <K> the key type
  * @param <V> the value type
  *
  * @author Bonsen Yusuf
  * @author Samuel A. Rebelsky
  */
-public class AssociativeArray<K, V> {
+public class AssociativeArray<K, V> implements Iterable<Map.Entry<K, V>> {
   // +-----------+---------------------------------------------------
   // | Constants |
   // +-----------+
@@ -23,6 +51,18 @@ public class AssociativeArray<K, V> {
    */
   static final int DEFAULT_CAPACITY = 16;
 
+  /**
+   * The default fraction of the hash table that may be filled before
+   * it grows.
+   */
+  static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+  /**
+   * The number of entries moved from the old hash table to the new one
+   * on each set or remove while a resize is in progress.
+   */
+  static final int MIGRATE_STEP = 8;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -33,10 +73,64 @@ public class AssociativeArray<K, V> {
   int size;
 
   /**
-   * The array of key/value pairs.
+   * The number of entries of `pairs` in use, including removed pairs
+   * that have not been compacted away yet.
+   */
+  int used;
+
+  /**
+   * The array of key/value pairs, in insertion order. Entries below
+   * `used` are null where a pair has been removed.
    */
   KVPair<K, V> pairs[];
 
+  /**
+   * The hash table. Each slot holds one more than the index of a pair
+   * in `pairs`, or 0 if the slot is empty. Its length is a power of two.
+   */
+  int[] slots;
+
+  /**
+   * The cached hash of the pair referenced by the corresponding slot.
+   */
+  int[] hashes;
+
+  /**
+   * The hash table we are migrating away from, or null if no resize
+   * is in progress.
+   */
+  int[] oldSlots;
+
+  /**
+   * The cached hashes for `oldSlots`.
+   */
+  int[] oldHashes;
+
+  /**
+   * There are no pairs (only tombstones) in `pairs` below this index.
+   */
+  int first;
+
+  /**
+   * The pairs at indices below `migrated` are already in `slots`.
+   */
+  int migrated;
+
+  /**
+   * The number of pairs that were in `oldSlots` when the resize started.
+   */
+  int migrateLimit;
+
+  /**
+   * The fraction of `slots` that may be used before we grow it.
+   */
+  final float loadFactor;
+
+  /**
+   * The number of pairs we can hold before we grow `slots`.
+   */
+  int threshold;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -44,14 +138,66 @@ public class AssociativeArray<K, V> {
   /**
    * Create a new, empty associative array.
    */
-  @SuppressWarnings({ "unchecked" })
   public AssociativeArray() {
-    // Creating new arrays is sometimes a PITN.
-    this.pairs = (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(),
-        DEFAULT_CAPACITY);
-    this.size = 0;
+    this(DEFAULT_LOAD_FACTOR);
   } // AssociativeArray()
 
+  /**
+   * Create a new, empty associative array whose hash table grows once
+   * it is more than `loadFactor` full.
+   *
+   * @param loadFactor
+   *   The maximum fill ratio of the hash table.
+   *
+   * @throws IllegalArgumentException
+   *   If loadFactor is not strictly between 0 and 1.
+   */
+  public AssociativeArray(float loadFactor) {
+    this(DEFAULT_CAPACITY, loadFactor);
+  } // AssociativeArray(float)
+
+  /**
+   * Create a new, empty associative array with room for `capacity`
+   * pairs, so that filling it up to that size needs no resizing.
+   *
+   * @param capacity
+   *   The expected number of pairs.
+   *
+   * @throws IllegalArgumentException
+   *   If capacity is negative.
+   */
+  public AssociativeArray(int capacity) {
+    this(capacity, DEFAULT_LOAD_FACTOR);
+  } // AssociativeArray(int)
+
+  /**
+   * Create a new, empty associative array with room for `capacity`
+   * pairs whose hash table grows once it is more than `loadFactor` full.
+   *
+   * @param capacity
+   *   The expected number of pairs.
+   * @param loadFactor
+   *   The maximum fill ratio of the hash table.
+   *
+   * @throws IllegalArgumentException
+   *   If capacity is negative or loadFactor is not strictly between
+   *   0 and 1.
+   */
+  public AssociativeArray(int capacity, float loadFactor) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    } // if
+    if (!(loadFactor > 0 && loadFactor < 1)) {
+      throw new IllegalArgumentException("Invalid load factor: " + loadFactor);
+    } // if
+    this.loadFactor = loadFactor;
+    this.pairs = newPairs(Math.max(capacity, 1));
+    this.size = 0;
+    this.used = 0;
+    this.first = 0;
+    initTable(tableSizeFor(capacity, loadFactor));
+  } // AssociativeArray(int, float)
+
   // +------------------+--------------------------------------------
   // | Standard Methods |
   // +------------------+
@@ -62,11 +208,14 @@ public class AssociativeArray<K, V> {
    * @return a new copy of the array
    */
   public AssociativeArray<K, V> clone() {
-    AssociativeArray<K, V> copy = new AssociativeArray<>();
-    for (int i = 0; i < this.size; i++) {
-      copy.pairs[i] = this.pairs[i].clone();
+    AssociativeArray<K, V> copy = new AssociativeArray<>(this.size, this.loadFactor);
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null) {
+        copy.pairs[copy.used++] = this.pairs[i].clone();
+      }
     }
-    copy.size = this.size;
+    copy.size = copy.used;
+    copy.rebuildTable(copy.slots.length);
     return copy;
   } //clone()
 
@@ -80,11 +229,14 @@ public class AssociativeArray<K, V> {
       return "{}";
   }
   StringBuilder sb = new StringBuilder("{");
-  for (int i = 0; i < this.size; i++) {
-      sb.append(this.pairs[i]); // Directly append the KVPair
-      if (i < this.size - 1) {
+  for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] == null) {
+          continue; // Skip removed pairs
+      }
+      if (sb.length() > 1) {
           sb.append(", ");
       }
+      sb.append(this.pairs[i]); // Directly append the KVPair
   }
   sb.append("}");
   return sb.toString();
@@ -111,19 +263,46 @@ public class AssociativeArray<K, V> {
     if (key == null) {
       throw new NullKeyException("Null key.");
     }
-    for (int i = 0; i < this.size; i++) {
-      if (this.pairs[i].key.equals(key)) {
-        this.pairs[i].val = value;
-        return;
-      }
-    }
-    if (this.size == this.pairs.length) {
-      expand();
-    }
-    this.pairs[this.size] = new KVPair<>(key, value);
-    this.size++;
+    put(key, value, hash(key));
   } // set(K,V)
 
+  /**
+   * Copy all the key/value pairs of other into this associative array,
+   * replacing the values of keys that are already present. The arrays
+   * are resized at most once, and no key in other is rehashed.
+   *
+   * @param other
+   *   The pairs to add.
+   */
+  public void putAll(AssociativeArray<? extends K, ? extends V> other) {
+    ensureCapacity(this.size + other.size);
+    for (int i = 0; i < other.used; i++) {
+      KVPair<? extends K, ? extends V> pair = other.pairs[i];
+      if (pair != null) {
+        put(pair.key, pair.val, pair.hash);
+      } // if
+    } // for
+  } // putAll(AssociativeArray)
+
+  /**
+   * Make sure there is room for at least `capacity` pairs, so that
+   * adding pairs up to that size needs no further resizing.
+   *
+   * @param capacity
+   *   The number of pairs to make room for.
+   */
+  public void ensureCapacity(int capacity) {
+    if (this.used != this.size) {
+      compact();
+    } // if
+    if (capacity > this.pairs.length) {
+      this.pairs = java.util.Arrays.copyOf(this.pairs, capacity);
+    } // if
+    if (capacity >= this.threshold) {
+      rebuildTable(tableSizeFor(capacity, this.loadFactor));
+    } // if
+  } // ensureCapacity(int)
+
   /**
    * Get the value associated with key.
    *
@@ -143,32 +322,137 @@ public class AssociativeArray<K, V> {
    * return false for the null key.
    */
   public boolean hasKey(K key) {
-    try {
-      find(key);
-      return true;
-    } catch (KeyNotFoundException e) {
-      return false;
-    }
+    return indexOf(key) >= 0;
   } // hasKey(K)
 
+  /**
+   * Get the value associated with key, or a default if key does not
+   * appear in the associative array. Unlike get, a missing key does
+   * not cost an exception.
+   *
+   * @param key
+   *   A key (possibly null).
+   * @param defaultValue
+   *   The value to return if key is not present.
+   *
+   * @return the value associated with key, or defaultValue.
+   */
+  public V getOrDefault(K key, V defaultValue) {
+    int index = indexOf(key);
+    return (index < 0) ? defaultValue : this.pairs[index].val;
+  } // getOrDefault(K, V)
+
+  /**
+   * Look up the value associated with key without throwing.
+   *
+   * @param key
+   *   A key (possibly null).
+   *
+   * @return the value associated with key, or an empty Optional if key
+   *   is not present (or is associated with null).
+   */
+  public Optional<V> lookup(K key) {
+    return Optional.ofNullable(getOrDefault(key, null));
+  } // lookup(K)
+
   /**
    * Remove the key/value pair associated with a key. Future calls
    * to get(key) will throw an exception. If the key does not appear
    * in the associative array, does nothing.
    */
   public void remove(K key) {
-try {
-      int index = find(key);
-      // Shift elements.
-      for (int i = index; i < this.size - 1; i++) {
-        this.pairs[i] = this.pairs[i + 1];
-      }
-      this.pairs[--this.size] = null; // Make the last spot empty.
-    } catch (KeyNotFoundException e) {
+    if (this.oldSlots != null) {
+      migrate();
+    } // if
+    int index = indexOf(key);
+    if (index < 0) {
       // If there is no key found, do nothing.
-    }
+      return;
+    } // if
+    // Leave a tombstone; lookups skip it and compact removes it.
+    this.pairs[index] = null;
+    this.size--;
+    if (this.used - this.size > this.size) {
+      compact();
+    } else if (index == this.first) {
+      // Keep traversals from rescanning the tombstones at the front,
+      // e.g., when the oldest pair is removed again and again
+      while (this.first < this.used && this.pairs[this.first] == null) {
+        this.first++;
+      } // while
+    } // if/else
   } // remove(K)
 
+  /**
+   * Squeeze out the tombstones left by remove, keeping the remaining
+   * pairs in order, and rebuild the hash table without them. This
+   * happens automatically once tombstones outnumber live pairs; call
+   * it directly to reclaim space at a convenient time.
+   */
+  public void compact() {
+    int to = 0;
+    for (int from = 0; from < this.used; from++) {
+      if (this.pairs[from] != null) {
+        this.pairs[to++] = this.pairs[from];
+      } // if
+    } // for
+    java.util.Arrays.fill(this.pairs, to, this.used, null);
+    this.used = to;
+    this.size = to;
+    this.first = 0;
+    rebuildTable(this.slots.length);
+  } // compact()
+
+  /**
+   * Remove every key in keys, compacting the remaining pairs in a
+   * single pass (rather than shifting the pairs once per key). Keys
+   * that do not appear are ignored.
+   *
+   * @param keys
+   *   The keys to remove.
+   *
+   * @return the number of pairs removed.
+   */
+  public int removeAll(Iterable<? extends K> keys) {
+    int removed = 0;
+    for (K key : keys) {
+      int index = indexOf(key);
+      if (index >= 0) {
+        this.pairs[index] = null;
+        this.size--;
+        removed++;
+      } // if
+    } // for
+    if (removed > 0) {
+      compact();
+    } // if
+    return removed;
+  } // removeAll(Iterable)
+
+  /**
+   * Keep only the pairs for which keep returns true, compacting the
+   * remaining pairs in a single pass.
+   *
+   * @param keep
+   *   The test applied to each key and its value.
+   *
+   * @return the number of pairs removed.
+   */
+  public int retainIf(BiPredicate<? super K, ? super V> keep) {
+    int removed = 0;
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null && !keep.test(this.pairs[i].key, this.pairs[i].val)) {
+        this.pairs[i] = null;
+        this.size--;
+        removed++;
+      } // if
+    } // for
+    if (removed > 0) {
+      compact();
+    } // if
+    return removed;
+  } // retainIf(BiPredicate)
+
   /**
    * Determine how many key/value pairs are in the associative array.
    */
@@ -176,6 +460,23 @@ try {
     return this.size;
   } // size()
 
+  /**
+   * Copy this array into a PersistentAssociativeArray with the same
+   * keys, values and key order, e.g., to take cheap snapshots of it
+   * from then on. The cached hashes are reused, so no key is rehashed.
+   *
+   * @return a new PersistentAssociativeArray
+   */
+  public PersistentAssociativeArray<K, V> toPersistent() {
+    PersistentAssociativeArray<K, V> result = new PersistentAssociativeArray<>();
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null) {
+        result.put(this.pairs[i].key, this.pairs[i].val, this.pairs[i].hash);
+      } // if
+    } // for
+    return result;
+  } // toPersistent()
+
   // +-----------------+---------------------------------------------
   // | Private Methods |
   // +-----------------+
@@ -198,14 +499,195 @@ try {
    *   If the key does not appear in the associative array.
    */
   int find(K key) throws KeyNotFoundException {
-    for (int i = 0; i < this.size; i++) {
-      if (this.pairs[i].key.equals(key)) {
-        return i;
-      }
+    int index = indexOf(key);
+    if (index < 0) {
+      throw new KeyNotFoundException("Key " + key + " not found.");
     }
-    throw new KeyNotFoundException("Key " + key + " not found.");
+    return index;
   }
 
+  /**
+   * Find the index of the entry in `pairs` that contains key, without
+   * throwing.
+   *
+   * @param key
+   *   The key of the entry (possibly null).
+   *
+   * @return the index of the entry, or -1 if key is null or does not
+   *   appear in the associative array.
+   */
+  int indexOf(K key) {
+    if (key == null) {
+      return -1;
+    } // if
+    return probe(key, hash(key));
+  } // indexOf(K)
+
+  /**
+   * Look up a (non-null) key in the hash table, and in the old table if
+   * a resize is still in progress. Changes nothing.
+   *
+   * @param key
+   *   The key to look for.
+   * @param hash
+   *   The hash of that key, as computed by `hash`.
+   *
+   * @return the index of key in `pairs`, or -1 if it is not present.
+   */
+  int probe(K key, int hash) {
+    int index = probe(this.slots, this.hashes, key, hash);
+    if (index < 0 && this.oldSlots != null) {
+      index = probe(this.oldSlots, this.oldHashes, key, hash);
+    } // if
+    return index;
+  } // probe(K, int)
+
+  /**
+   * Look up a key in one hash table using linear probing. Slots whose
+   * pair has been cleared are skipped.
+   */
+  int probe(int[] table, int[] tableHashes, K key, int hash) {
+    int mask = table.length - 1;
+    for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask) {
+      if (tableHashes[i] == hash) {
+        KVPair<K, V> pair = this.pairs[table[i] - 1];
+        if (pair != null && pair.key.equals(key)) {
+          return table[i] - 1;
+        } // if
+      } // if
+    } // for
+    return -1;
+  } // probe(int[], int[], K, int)
+
+  /**
+   * Record that the pair at `index` has the given hash.
+   */
+  static void insertSlot(int[] table, int[] tableHashes, int hash, int index) {
+    int mask = table.length - 1;
+    int i = hash & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    } // while
+    table[i] = index + 1;
+    tableHashes[i] = hash;
+  } // insertSlot(int[], int[], int, int)
+
+  /**
+   * Associate key (whose hash is already known) with value.
+   */
+  void put(K key, V value, int hash) {
+    if (this.oldSlots != null) {
+      migrate();
+    } // if
+    int index = probe(key, hash);
+    if (index >= 0) {
+      this.pairs[index].val = value;
+      return;
+    }
+    if (this.used == this.pairs.length) {
+      expand();
+    }
+    if (this.used >= this.threshold) {
+      startResize();
+    }
+    this.pairs[this.used] = new KVPair<>(key, value, hash);
+    insertSlot(this.slots, this.hashes, hash, this.used);
+    this.used++;
+    this.size++;
+  } // put(K, V, int)
+
+  /**
+   * Start growing the hash table. New pairs go straight into the larger
+   * table; existing pairs are moved over by `migrate`.
+   */
+  void startResize() {
+    finishMigration();
+    this.oldSlots = this.slots;
+    this.oldHashes = this.hashes;
+    this.migrated = 0;
+    this.migrateLimit = this.used;
+    initTable(this.slots.length * 2);
+  } // startResize()
+
+  /**
+   * Move the next few pairs from the old hash table to the new one.
+   */
+  void migrate() {
+    int end = Math.min(this.migrated + MIGRATE_STEP, this.migrateLimit);
+    for (int i = this.migrated; i < end; i++) {
+      if (this.pairs[i] != null) {
+        insertSlot(this.slots, this.hashes, this.pairs[i].hash, i);
+      } // if
+    } // for
+    this.migrated = end;
+    if (this.migrated == this.migrateLimit) {
+      this.oldSlots = null;
+      this.oldHashes = null;
+    } // if
+  } // migrate()
+
+  /**
+   * Complete any resize that is in progress.
+   */
+  void finishMigration() {
+    while (this.oldSlots != null) {
+      migrate();
+    } // while
+  } // finishMigration()
+
+  /**
+   * Rebuild the hash table from scratch with the given number of slots,
+   * abandoning any resize that is in progress.
+   */
+  void rebuildTable(int capacity) {
+    this.oldSlots = null;
+    this.oldHashes = null;
+    initTable(capacity);
+    for (int i = 0; i < this.used; i++) {
+      if (this.pairs[i] != null) {
+        insertSlot(this.slots, this.hashes, this.pairs[i].hash, i);
+      } // if
+    } // for
+  } // rebuildTable(int)
+
+  /**
+   * Allocate an empty hash table with the given (power of two) number
+   * of slots.
+   */
+  void initTable(int capacity) {
+    this.slots = new int[capacity];
+    this.hashes = new int[capacity];
+    this.threshold = (int) (capacity * this.loadFactor);
+  } // initTable(int)
+
+  /**
+   * Compute the hash we store for a key, mixing the high bits into the
+   * low ones since we index with a power-of-two mask.
+   */
+  static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  } // hash(Object)
+
+  /**
+   * Find the smallest power of two that can hold `entries` pairs at the
+   * given load factor.
+   */
+  static int tableSizeFor(int entries, float loadFactor) {
+    int needed = (int) Math.ceil(Math.max(entries, 1) / loadFactor) + 1;
+    return Integer.highestOneBit(needed - 1) << 1;
+  } // tableSizeFor(int, float)
+
+  /**
+   * Create an array of pairs with the given capacity.
+   */
+  @SuppressWarnings({ "unchecked" })
+  static <K, V> KVPair<K, V>[] newPairs(int capacity) {
+    // Creating new arrays is sometimes a PITN.
+    return (KVPair<K, V>[]) newInstance((new KVPair<K, V>()).getClass(),
+        capacity);
+  } // newPairs(int)
+
 
 /**
  * Retrieve all the keys in the associative array.
@@ -214,13 +696,139 @@ try {
  */
 public K[] getKeys() { // getKeys()
   K[] keys = (K[]) new Object[size]; // Create an array of keys
-  for (int i = 0; i < size; i++) {
-      keys[i] = pairs[i].key;
+  int next = 0;
+  for (int i = 0; i < used; i++) {
+      if (pairs[i] != null) { // Skip removed pairs
+          keys[next++] = pairs[i].key;
+      } // if
   } // for
   return keys;
 } // getKeys()
 
-  
-} // class AssociativeArray
+  // +-----------+---------------------------------------------------
+  // | Iteration |
+  // +-----------+
+
+  /**
+   * Call action on each key/value pair, in insertion order. Unlike
+   * looping over getKeys and calling get, this copies nothing and
+   * does no lookups.
+   *
+   * @param action
+   *   The action to perform on each key and its value.
+   */
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = this.first; i < this.used; i++) {
+      KVPair<K, V> pair = this.pairs[i];
+      if (pair != null) {
+        action.accept(pair.key, pair.val);
+      } // if
+    } // for
+  } // forEach(BiConsumer)
 
+  /**
+   * Get an iterator over the key/value pairs, in insertion order. The
+   * entries are the pairs themselves, so nothing is allocated per
+   * entry and setValue writes through. The associative array must not
+   * be changed in other ways while iterating.
+   *
+   * @return the iterator
+   */
+  public Iterator<Map.Entry<K, V>> iterator() {
+    return Spliterators.iterator(spliterator());
+  } // iterator()
+
+  /**
+   * Get a spliterator over the key/value pairs, in insertion order. It
+   * splits evenly, so parallel streams divide the work well, and knows
+   * its exact size unless there are tombstones, which it skips.
+   *
+   * @return the spliterator
+   */
+  public Spliterator<Map.Entry<K, V>> spliterator() {
+    return new PairSpliterator<K, V>(this.pairs, this.first, this.used,
+        this.used - this.first == this.size);
+  } // spliterator()
+
+  /**
+   * Get a stream of the key/value pairs, in insertion order. Call
+   * parallel() on the result for a parallel stream.
+   *
+   * @return the stream
+   */
+  public Stream<Map.Entry<K, V>> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  } // stream()
+
+  /**
+   * A spliterator over a range of an array of pairs, skipping the
+   * tombstones (null pairs) in it.
+   */
+  static class PairSpliterator<K, V> implements Spliterator<Map.Entry<K, V>> {
+    /**
+     * The pairs we are working through.
+     */
+    final KVPair<K, V>[] pairs;
+
+    /**
+     * The index of the next pair to visit.
+     */
+    int next;
+
+    /**
+     * The index just past the last pair to visit.
+     */
+    final int end;
+
+    /**
+     * Whether the range holds no tombstones, so its length is its size.
+     */
+    final boolean exact;
+
+    PairSpliterator(KVPair<K, V>[] pairs, int start, int end, boolean exact) {
+      this.pairs = pairs;
+      this.next = start;
+      this.end = end;
+      this.exact = exact;
+    } // PairSpliterator(KVPair[], int, int, boolean)
 
+    public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+      while (this.next < this.end) {
+        KVPair<K, V> pair = this.pairs[this.next++];
+        if (pair != null) {
+          action.accept(pair);
+          return true;
+        } // if
+      } // while
+      return false;
+    } // tryAdvance(Consumer)
+
+    public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+      while (this.next < this.end) {
+        KVPair<K, V> pair = this.pairs[this.next++];
+        if (pair != null) {
+          action.accept(pair);
+        } // if
+      } // while
+    } // forEachRemaining(Consumer)
+
+    public Spliterator<Map.Entry<K, V>> trySplit() {
+      int mid = (this.next + this.end) >>> 1;
+      if (mid <= this.next) {
+        return null;
+      } // if
+      Spliterator<Map.Entry<K, V>> prefix =
+          new PairSpliterator<>(this.pairs, this.next, mid, this.exact);
+      this.next = mid;
+      return prefix;
+    } // trySplit()
+
+    public long estimateSize() {
+      return this.end - this.next;
+    } // estimateSize()
+
+    public int characteristics() {
+      return ORDERED | DISTINCT | NONNULL | (this.exact ? SIZED | SUBSIZED : 0);
+    } // characteristics()
+  } // class PairSpliterator
+} // class AssociativeArray
@@ -0,0 +1,190 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Optional;
+
+/**
+ * An associative array that may be shared between threads. Reads never
+ * lock: they work on an immutable PersistentAssociativeArray published
+ * through a volatile field. Writers take a lock, build the next version
+ * by path copying (which shares everything but the changed path), and
+ * publish it, so readers never see a half-finished update.
+ *
+ * Iteration (getKeys, toString) works on the version current when it
+ * started and does not see later updates.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ConcurrentAssociativeArray<K, V> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The current contents. Never modified once published; writers
+   * replace it instead.
+   */
+  private volatile PersistentAssociativeArray<K, V> current;
+
+  /**
+   * The lock that serializes writers.
+   */
+  private final Object writeLock = new Object();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty concurrent associative array.
+   */
+  public ConcurrentAssociativeArray() {
+    this.current = new PersistentAssociativeArray<>();
+  } // ConcurrentAssociativeArray()
+
+  /**
+   * Create a concurrent associative array with the contents of an
+   * existing (persistent) one.
+   *
+   * @param contents
+   *   The initial contents. Later changes to contents are not seen.
+   */
+  public ConcurrentAssociativeArray(PersistentAssociativeArray<K, V> contents) {
+    this.current = contents.clone();
+  } // ConcurrentAssociativeArray(PersistentAssociativeArray)
+
+  // +------------------+--------------------------------------------
+  // | Standard Methods |
+  // +------------------+
+
+  /**
+   * Create a copy of this array.
+   *
+   * @return a new copy of the array
+   */
+  public ConcurrentAssociativeArray<K, V> clone() {
+    return new ConcurrentAssociativeArray<>(this.current);
+  } // clone()
+
+  /**
+   * Convert the array to a string.
+   *
+   * @return a string of the form "{Key0:Value0, Key1:Value1, ... KeyN:ValueN}"
+   */
+  public String toString() {
+    return this.current.toString();
+  } // toString()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Set the value associated with key to value.
+   *
+   * @param key
+   *   The key whose value we are setting.
+   * @param value
+   *   The value of that key.
+   *
+   * @throws NullKeyException
+   *   If the client provides a null key.
+   */
+  public void set(K key, V value) throws NullKeyException {
+    synchronized (this.writeLock) {
+      PersistentAssociativeArray<K, V> next = this.current.clone();
+      next.set(key, value);
+      this.current = next;
+    } // synchronized
+  } // set(K, V)
+
+  /**
+   * Remove the key/value pair associated with a key. If the key does
+   * not appear in the associative array, does nothing.
+   */
+  public void remove(K key) {
+    synchronized (this.writeLock) {
+      PersistentAssociativeArray<K, V> prev = this.current;
+      if (prev.hasKey(key)) {
+        PersistentAssociativeArray<K, V> next = prev.clone();
+        next.remove(key);
+        this.current = next;
+      } // if
+    } // synchronized
+  } // remove(K)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @param key
+   *   A key
+   *
+   * @throws KeyNotFoundException
+   *   when the key is null or does not appear in the associative array.
+   */
+  public V get(K key) throws KeyNotFoundException {
+    return this.current.get(key);
+  } // get(K)
+
+  /**
+   * Get the value associated with key, or a default if key does not
+   * appear in the associative array.
+   *
+   * @param key
+   *   A key (possibly null).
+   * @param defaultValue
+   *   The value to return if key is not present.
+   *
+   * @return the value associated with key, or defaultValue.
+   */
+  public V getOrDefault(K key, V defaultValue) {
+    return this.current.getOrDefault(key, defaultValue);
+  } // getOrDefault(K, V)
+
+  /**
+   * Look up the value associated with key without throwing.
+   *
+   * @param key
+   *   A key (possibly null).
+   *
+   * @return the value associated with key, or an empty Optional.
+   */
+  public Optional<V> lookup(K key) {
+    return this.current.lookup(key);
+  } // lookup(K)
+
+  /**
+   * Determine if key appears in the associative array. Returns false
+   * for the null key.
+   */
+  public boolean hasKey(K key) {
+    return this.current.hasKey(key);
+  } // hasKey(K)
+
+  /**
+   * Determine how many key/value pairs are in the associative array.
+   */
+  public int size() {
+    return this.current.size();
+  } // size()
+
+  /**
+   * Retrieve all the keys in the associative array, in the order in
+   * which they were added, as of the start of the call.
+   *
+   * @return an array of all keys in the associative array
+   */
+  public K[] getKeys() {
+    return this.current.getKeys();
+  } // getKeys()
+
+  /**
+   * Get a consistent snapshot of the contents. This takes constant
+   * time and the snapshot is not affected by later updates.
+   *
+   * @return the snapshot
+   */
+  public PersistentAssociativeArray<K, V> snapshot() {
+    return this.current.clone();
+  } // snapshot()
+} // class ConcurrentAssociativeArray
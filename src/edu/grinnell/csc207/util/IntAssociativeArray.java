@@ -0,0 +1,379 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * An associative array with primitive int keys, such as the ids handed
+ * out by a SymbolTable. Keys and values are kept in parallel arrays in
+ * insertion order (no boxing and no KVPair objects) and indexed by an
+ * open-addressing hash table, so lookups are integer compares.
+ *
+ * As in AssociativeArray, remove leaves a tombstone that `compact`
+ * squeezes out later, so removal takes constant time.
+ *
+ * @param <V> the value type
+ */
+public class IntAssociativeArray<V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default capacity of the initial arrays.
+   */
+  static final int DEFAULT_CAPACITY = 16;
+
+  /**
+   * The value stored in place of a removed pair until we compact.
+   */
+  static final Object DELETED = new Object();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of key/value pairs.
+   */
+  int size;
+
+  /**
+   * The number of entries of `keys` in use, including removed pairs
+   * that have not been compacted away yet.
+   */
+  int used;
+
+  /**
+   * The keys, in insertion order.
+   */
+  int[] keys;
+
+  /**
+   * The values; vals[i] goes with keys[i], or is DELETED if that pair
+   * has been removed.
+   */
+  Object[] vals;
+
+  /**
+   * The hash table. Each slot holds one more than an index into `keys`,
+   * or 0 if the slot is empty. Its length is a power of two.
+   */
+  int[] slots;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty associative array.
+   */
+  public IntAssociativeArray() {
+    this(DEFAULT_CAPACITY);
+  } // IntAssociativeArray()
+
+  /**
+   * Create a new, empty associative array with room for `capacity`
+   * pairs, so that filling it up to that size needs no resizing.
+   *
+   * @param capacity
+   *   The expected number of pairs.
+   *
+   * @throws IllegalArgumentException
+   *   If capacity is negative.
+   */
+  public IntAssociativeArray(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    } // if
+    this.keys = new int[Math.max(capacity, 1)];
+    this.vals = new Object[Math.max(capacity, 1)];
+    this.size = 0;
+    this.used = 0;
+    this.slots = new int[AssociativeArray.tableSizeFor(capacity,
+        AssociativeArray.DEFAULT_LOAD_FACTOR)];
+  } // IntAssociativeArray(int)
+
+  // +------------------+--------------------------------------------
+  // | Standard Methods |
+  // +------------------+
+
+  /**
+   * Create a copy of this IntAssociativeArray.
+   *
+   * @return a new copy of the array
+   */
+  public IntAssociativeArray<V> clone() {
+    IntAssociativeArray<V> copy = new IntAssociativeArray<>();
+    copy.keys = this.keys.clone();
+    copy.vals = this.vals.clone();
+    copy.size = this.size;
+    copy.used = this.used;
+    copy.slots = this.slots.clone();
+    return copy;
+  } // clone()
+
+  /**
+   * Convert the array to a string.
+   *
+   * @return a string of the form "{Key0:Value0, Key1:Value1, ... KeyN:ValueN}"
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = 0; i < this.used; i++) {
+      if (this.vals[i] == DELETED) {
+        continue;
+      } // if
+      if (sb.length() > 1) {
+        sb.append(", ");
+      } // if
+      sb.append(this.keys[i]).append(":").append(this.vals[i]);
+    } // for
+    sb.append("}");
+    return sb.toString();
+  } // toString()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Set the value associated with key to value.
+   *
+   * @param key
+   *   The key whose value we are setting.
+   * @param value
+   *   The value of that key.
+   */
+  public void set(int key, V value) {
+    int index = indexOf(key);
+    if (index >= 0) {
+      this.vals[index] = value;
+      return;
+    } // if
+    if (this.used == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+      this.vals = Arrays.copyOf(this.vals, this.vals.length * 2);
+    } // if
+    if (this.used >= this.slots.length * AssociativeArray.DEFAULT_LOAD_FACTOR) {
+      rebuildTable(this.slots.length * 2);
+    } // if
+    this.keys[this.used] = key;
+    this.vals[this.used] = value;
+    insertSlot(key, this.used);
+    this.used++;
+    this.size++;
+  } // set(int, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @param key
+   *   A key
+   *
+   * @throws KeyNotFoundException
+   *   when the key does not appear in the associative array.
+   */
+  public V get(int key) throws KeyNotFoundException {
+    int index = indexOf(key);
+    if (index < 0) {
+      throw new KeyNotFoundException("Key " + key + " not found.");
+    } // if
+    return valAt(index);
+  } // get(int)
+
+  /**
+   * Get the value associated with key, or a default if key does not
+   * appear in the associative array.
+   *
+   * @param key
+   *   A key.
+   * @param defaultValue
+   *   The value to return if key is not present.
+   *
+   * @return the value associated with key, or defaultValue.
+   */
+  public V getOrDefault(int key, V defaultValue) {
+    int index = indexOf(key);
+    return (index < 0) ? defaultValue : valAt(index);
+  } // getOrDefault(int, V)
+
+  /**
+   * Look up the value associated with key without throwing.
+   *
+   * @param key
+   *   A key.
+   *
+   * @return the value associated with key, or an empty Optional if key
+   *   is not present (or is associated with null).
+   */
+  public Optional<V> lookup(int key) {
+    return Optional.ofNullable(getOrDefault(key, null));
+  } // lookup(int)
+
+  /**
+   * Determine if key appears in the associative array.
+   */
+  public boolean hasKey(int key) {
+    return indexOf(key) >= 0;
+  } // hasKey(int)
+
+  /**
+   * Remove the key/value pair associated with a key. If the key does
+   * not appear in the associative array, does nothing.
+   */
+  public void remove(int key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return;
+    } // if
+    this.vals[index] = DELETED;
+    this.size--;
+    if (this.used - this.size > this.size) {
+      compact();
+    } // if
+  } // remove(int)
+
+  /**
+   * Squeeze out the tombstones left by remove, keeping the remaining
+   * pairs in order, and rebuild the hash table without them.
+   */
+  public void compact() {
+    int to = 0;
+    for (int from = 0; from < this.used; from++) {
+      if (this.vals[from] != DELETED) {
+        this.keys[to] = this.keys[from];
+        this.vals[to] = this.vals[from];
+        to++;
+      } // if
+    } // for
+    Arrays.fill(this.vals, to, this.used, null);
+    this.used = to;
+    this.size = to;
+    rebuildTable(this.slots.length);
+  } // compact()
+
+  /**
+   * Determine how many key/value pairs are in the associative array.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Retrieve all the keys in the associative array, in the order in
+   * which they were added.
+   *
+   * @return an array of all keys in the associative array
+   */
+  public int[] getKeys() {
+    if (this.used == this.size) {
+      return Arrays.copyOf(this.keys, this.size);
+    } // if
+    int[] result = new int[this.size];
+    int next = 0;
+    for (int i = 0; i < this.used; i++) {
+      if (this.vals[i] != DELETED) {
+        result[next++] = this.keys[i];
+      } // if
+    } // for
+    return result;
+  } // getKeys()
+
+  /**
+   * Call action on each key/value pair, in insertion order, without
+   * copying the keys or looking anything up.
+   *
+   * @param action
+   *   The action to perform on each key and its value.
+   */
+  public void forEach(EntryConsumer<? super V> action) {
+    for (int i = 0; i < this.used; i++) {
+      if (this.vals[i] != DELETED) {
+        action.accept(this.keys[i], valAt(i));
+      } // if
+    } // for
+  } // forEach(EntryConsumer)
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Find the index of key in `keys`, or -1 if it is not present.
+   */
+  int indexOf(int key) {
+    int mask = this.slots.length - 1;
+    for (int i = hash(key) & mask; this.slots[i] != 0; i = (i + 1) & mask) {
+      int index = this.slots[i] - 1;
+      if (this.keys[index] == key && this.vals[index] != DELETED) {
+        return index;
+      } // if
+    } // for
+    return -1;
+  } // indexOf(int)
+
+  /**
+   * Get the value at an index in `vals`.
+   */
+  @SuppressWarnings({ "unchecked" })
+  V valAt(int index) {
+    return (V) this.vals[index];
+  } // valAt(int)
+
+  /**
+   * Record that key is stored at index.
+   */
+  void insertSlot(int key, int index) {
+    int mask = this.slots.length - 1;
+    int i = hash(key) & mask;
+    while (this.slots[i] != 0) {
+      i = (i + 1) & mask;
+    } // while
+    this.slots[i] = index + 1;
+  } // insertSlot(int, int)
+
+  /**
+   * Rebuild the hash table with the given (power of two) number of slots.
+   */
+  void rebuildTable(int capacity) {
+    this.slots = new int[capacity];
+    for (int i = 0; i < this.used; i++) {
+      if (this.vals[i] != DELETED) {
+        insertSlot(this.keys[i], i);
+      } // if
+    } // for
+  } // rebuildTable(int)
+
+  /**
+   * Scramble a key so that runs of consecutive ids spread across the
+   * table.
+   */
+  static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  } // hash(int)
+
+  // +------------------+--------------------------------------------
+  // | Helper Interface |
+  // +------------------+
+
+  /**
+   * Something that accepts an int key and its value (the int-keyed
+   * counterpart of a BiConsumer).
+   *
+   * @param <V> the value type
+   */
+  @FunctionalInterface
+  public interface EntryConsumer<V> {
+    /**
+     * Accept one key/value pair.
+     *
+     * @param key
+     *   The key.
+     * @param value
+     *   The value associated with key.
+     */
+    void accept(int key, V value);
+  } // interface EntryConsumer
+} // class IntAssociativeArray
@@ -1,15 +1,19 @@
 package edu.grinnell.csc207.util;
 
+import java.util.Map;
+import java.util.Objects;
+
 /**
  * An easy way to store key/value pairs.  We assume that other
- * classes will access fields directly.
+ * classes will access fields directly.  Pairs also serve as the
+ * Map.Entry objects handed out when iterating an AssociativeArray.
  *
  * @param <K>
  *   The type of the keys.
  * @param <V>
  *   The type of the values.
  */
-class KVPair<K, V> {
+class KVPair<K, V> implements Map.Entry<K, V> {
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -24,6 +28,11 @@ class KVPair<K, V> {
    */
   V val;
 
+  /**
+   * The cached hash of the key (see AssociativeArray.hash).
+   */
+  int hash;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -46,6 +55,21 @@ class KVPair<K, V> {
     this.val = pairValue;
   } // KVPair(K,V)
 
+  /**
+   * Create a new key/value pair whose key has a known hash.
+   *
+   * @param pairKey
+   *   The key of the new pair.
+   * @param pairValue
+   *   The value of the new pair.
+   * @param pairHash
+   *   The hash of pairKey.
+   */
+  KVPair(K pairKey, V pairValue, int pairHash) {
+    this(pairKey, pairValue);
+    this.hash = pairHash;
+  } // KVPair(K,V,int)
+
   // +------------------+--------------------------------------------
   // | Standard methods |
   // +------------------+
@@ -56,9 +80,32 @@ class KVPair<K, V> {
    * @return the copy.
    */
   public KVPair<K,V> clone() {
-    return new KVPair<K,V>(this.key, this.val);
+    return new KVPair<K,V>(this.key, this.val, this.hash);
   } // clone()
 
+  /**
+   * Compare this pair to another Map.Entry, as Map.Entry specifies.
+   *
+   * @return true if other has an equal key and an equal value.
+   */
+  public boolean equals(Object other) {
+    if (!(other instanceof Map.Entry)) {
+      return false;
+    } // if
+    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+    return Objects.equals(this.key, entry.getKey())
+        && Objects.equals(this.val, entry.getValue());
+  } // equals(Object)
+
+  /**
+   * Compute a hash code, as Map.Entry specifies.
+   *
+   * @return the hash code.
+   */
+  public int hashCode() {
+    return Objects.hashCode(this.key) ^ Objects.hashCode(this.val);
+  } // hashCode()
+
   /**
    * Convert the key/value pair to a string (e.g., for printing).
    *
@@ -67,5 +114,41 @@ class KVPair<K, V> {
   public String toString() {
     return this.key.toString() + ":" + this.val.toString();
   } // toString()
+
+  // +-------------------+-------------------------------------------
+  // | Map.Entry Methods |
+  // +-------------------+
+
+  /**
+   * Get the key.
+   *
+   * @return the key.
+   */
+  public K getKey() {
+    return this.key;
+  } // getKey()
+
+  /**
+   * Get the value.
+   *
+   * @return the value.
+   */
+  public V getValue() {
+    return this.val;
+  } // getValue()
+
+  /**
+   * Replace the value.
+   *
+   * @param value
+   *   The new value.
+   *
+   * @return the old value.
+   */
+  public V setValue(V value) {
+    V old = this.val;
+    this.val = value;
+    return old;
+  } // setValue(V)
 } // class KVPair
 
@@ -0,0 +1,544 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * An associative array whose contents are stored in an immutable hash
+ * array mapped trie (HAMT). Updates copy only the path from the root to
+ * the changed entry and share everything else, so `clone` takes constant
+ * time and a clone is an independent snapshot: changes to the original
+ * do not show up in the clone and vice versa.
+ *
+ * Keys are reported by `getKeys` in the order they were first added, as
+ * in AssociativeArray.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class PersistentAssociativeArray<K, V> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of hash bits consumed by each level of the trie.
+   */
+  static final int BITS = 5;
+
+  /**
+   * The mask for one level's worth of hash bits.
+   */
+  static final int MASK = (1 << BITS) - 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The root of the trie. Never null; an empty array has an empty root.
+   */
+  Node<K, V> root;
+
+  /**
+   * The number of key/value pairs.
+   */
+  int size;
+
+  /**
+   * The sequence number to give the next new key, used to recover
+   * insertion order.
+   */
+  long nextSeq;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty persistent associative array.
+   */
+  public PersistentAssociativeArray() {
+    this.root = new BitmapNode<K, V>(0, new Object[0]);
+    this.size = 0;
+    this.nextSeq = 0;
+  } // PersistentAssociativeArray()
+
+  // +------------------+--------------------------------------------
+  // | Standard Methods |
+  // +------------------+
+
+  /**
+   * Create a snapshot of this array. This takes constant time, since
+   * the copy shares the (immutable) trie with the original.
+   *
+   * @return a new copy of the array
+   */
+  public PersistentAssociativeArray<K, V> clone() {
+    PersistentAssociativeArray<K, V> copy = new PersistentAssociativeArray<>();
+    copy.root = this.root;
+    copy.size = this.size;
+    copy.nextSeq = this.nextSeq;
+    return copy;
+  } // clone()
+
+  /**
+   * Convert the array to a string.
+   *
+   * @return a string of the form "{Key0:Value0, Key1:Value1, ... KeyN:ValueN}"
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    Leaf<K, V>[] leaves = leaves();
+    for (int i = 0; i < leaves.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      } // if
+      sb.append(leaves[i].key).append(":").append(leaves[i].val);
+    } // for
+    sb.append("}");
+    return sb.toString();
+  } // toString()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Set the value associated with key to value. Snapshots taken
+   * earlier with clone are unaffected.
+   *
+   * @param key
+   *   The key whose value we are setting.
+   * @param value
+   *   The value of that key.
+   *
+   * @throws NullKeyException
+   *   If the client provides a null key.
+   */
+  public void set(K key, V value) throws NullKeyException {
+    if (key == null) {
+      throw new NullKeyException("Null key.");
+    } // if
+    put(key, value, AssociativeArray.hash(key));
+  } // set(K, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @param key
+   *   A key
+   *
+   * @throws KeyNotFoundException
+   *   when the key is null or does not appear in the associative array.
+   */
+  public V get(K key) throws KeyNotFoundException {
+    Leaf<K, V> leaf = findLeaf(key);
+    if (leaf == null) {
+      throw new KeyNotFoundException("Key " + key + " not found.");
+    } // if
+    return leaf.val;
+  } // get(K)
+
+  /**
+   * Get the value associated with key, or a default if key does not
+   * appear in the associative array.
+   *
+   * @param key
+   *   A key (possibly null).
+   * @param defaultValue
+   *   The value to return if key is not present.
+   *
+   * @return the value associated with key, or defaultValue.
+   */
+  public V getOrDefault(K key, V defaultValue) {
+    Leaf<K, V> leaf = findLeaf(key);
+    return (leaf == null) ? defaultValue : leaf.val;
+  } // getOrDefault(K, V)
+
+  /**
+   * Look up the value associated with key without throwing.
+   *
+   * @param key
+   *   A key (possibly null).
+   *
+   * @return the value associated with key, or an empty Optional if key
+   *   is not present (or is associated with null).
+   */
+  public Optional<V> lookup(K key) {
+    return Optional.ofNullable(getOrDefault(key, null));
+  } // lookup(K)
+
+  /**
+   * Determine if key appears in the associative array. Returns false
+   * for the null key.
+   */
+  public boolean hasKey(K key) {
+    return findLeaf(key) != null;
+  } // hasKey(K)
+
+  /**
+   * Remove the key/value pair associated with a key. If the key does
+   * not appear in the associative array, does nothing. Snapshots taken
+   * earlier with clone are unaffected.
+   */
+  public void remove(K key) {
+    if (findLeaf(key) == null) {
+      return;
+    } // if
+    Node<K, V> newRoot = this.root.remove(key, AssociativeArray.hash(key), 0);
+    this.root = (newRoot == null) ? new BitmapNode<K, V>(0, new Object[0]) : newRoot;
+    this.size--;
+  } // remove(K)
+
+  /**
+   * Determine how many key/value pairs are in the associative array.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Retrieve all the keys in the associative array, in the order in
+   * which they were added.
+   *
+   * @return an array of all keys in the associative array
+   */
+  @SuppressWarnings({ "unchecked" })
+  public K[] getKeys() {
+    Leaf<K, V>[] leaves = leaves();
+    K[] keys = (K[]) new Object[leaves.length];
+    for (int i = 0; i < leaves.length; i++) {
+      keys[i] = leaves[i].key;
+    } // for
+    return keys;
+  } // getKeys()
+
+  /**
+   * Copy this array into a mutable AssociativeArray with the same keys,
+   * values and key order. The cached hashes are reused, so no key is
+   * rehashed or compared.
+   *
+   * @return a new AssociativeArray
+   */
+  public AssociativeArray<K, V> toAssociativeArray() {
+    Leaf<K, V>[] leaves = leaves();
+    AssociativeArray<K, V> result = new AssociativeArray<>();
+    result.pairs = AssociativeArray.newPairs(
+        Math.max(leaves.length, AssociativeArray.DEFAULT_CAPACITY));
+    for (int i = 0; i < leaves.length; i++) {
+      result.pairs[i] = new KVPair<>(leaves[i].key, leaves[i].val, leaves[i].hash);
+    } // for
+    result.size = leaves.length;
+    result.used = leaves.length;
+    result.rebuildTable(AssociativeArray.tableSizeFor(leaves.length, result.loadFactor));
+    return result;
+  } // toAssociativeArray()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Associate key (whose hash is already known) with value.
+   */
+  void put(K key, V value, int hash) {
+    Leaf<K, V> old = this.root.find(key, hash, 0);
+    if (old != null) {
+      this.root = this.root.put(new Leaf<>(key, value, hash, old.seq), 0);
+    } else {
+      this.root = this.root.put(new Leaf<>(key, value, hash, this.nextSeq++), 0);
+      this.size++;
+    } // if/else
+  } // put(K, V, int)
+
+  /**
+   * Find the leaf for a key, or null if there is none.
+   */
+  Leaf<K, V> findLeaf(K key) {
+    if (key == null) {
+      return null;
+    } // if
+    return this.root.find(key, AssociativeArray.hash(key), 0);
+  } // findLeaf(K)
+
+  /**
+   * Gather all the leaves, in insertion order.
+   */
+  @SuppressWarnings({ "unchecked" })
+  Leaf<K, V>[] leaves() {
+    Leaf<K, V>[] result = (Leaf<K, V>[]) new Leaf<?, ?>[this.size];
+    int count = this.root.collect(result, 0);
+    assert count == this.size;
+    Arrays.sort(result, (a, b) -> Long.compare(a.seq, b.seq));
+    return result;
+  } // leaves()
+
+  /**
+   * Build the smallest subtrie, starting at the given shift, that holds
+   * both a and b. Each is either a Leaf or a CollisionNode, and they
+   * have different hashes unless both are leaves.
+   */
+  static <K, V> Node<K, V> merge(Object a, int hashA, Object b, int hashB, int shift) {
+    if (hashA == hashB) {
+      return new CollisionNode<K, V>(hashA, new Object[] { a, b });
+    } // if
+    int indexA = (hashA >>> shift) & MASK;
+    int indexB = (hashB >>> shift) & MASK;
+    if (indexA == indexB) {
+      return new BitmapNode<K, V>(1 << indexA,
+          new Object[] { merge(a, hashA, b, hashB, shift + BITS) });
+    } else if (indexA < indexB) {
+      return new BitmapNode<K, V>((1 << indexA) | (1 << indexB), new Object[] { a, b });
+    } else {
+      return new BitmapNode<K, V>((1 << indexA) | (1 << indexB), new Object[] { b, a });
+    } // if/else
+  } // merge(Object, int, Object, int, int)
+
+  // +---------------+-----------------------------------------------
+  // | Trie Elements |
+  // +---------------+
+
+  /**
+   * One key/value pair. Leaves are never modified once built.
+   */
+  static class Leaf<K, V> {
+    final K key;
+    final V val;
+    final int hash;
+    final long seq;
+
+    Leaf(K key, V val, int hash, long seq) {
+      this.key = key;
+      this.val = val;
+      this.hash = hash;
+      this.seq = seq;
+    } // Leaf(K, V, int, long)
+
+    boolean matches(Object otherKey, int otherHash) {
+      return this.hash == otherHash && this.key.equals(otherKey);
+    } // matches(Object, int)
+  } // class Leaf
+
+  /**
+   * An interior node of the trie. Nodes are never modified once built;
+   * the update methods return new nodes (or this, if nothing changed).
+   */
+  abstract static class Node<K, V> {
+    /**
+     * Find the leaf for key, or null if there is none.
+     */
+    abstract Leaf<K, V> find(Object key, int hash, int shift);
+
+    /**
+     * Return a node that also contains leaf, replacing any leaf with
+     * the same key.
+     */
+    abstract Node<K, V> put(Leaf<K, V> leaf, int shift);
+
+    /**
+     * Return a node without key, or null if the result would be empty.
+     */
+    abstract Node<K, V> remove(Object key, int hash, int shift);
+
+    /**
+     * If this node holds exactly one leaf and nothing else, return it.
+     */
+    abstract Leaf<K, V> singleLeaf();
+
+    /**
+     * Copy all the leaves into out, starting at pos.
+     *
+     * @return the position after the last leaf copied.
+     */
+    abstract int collect(Leaf<K, V>[] out, int pos);
+  } // class Node
+
+  /**
+   * A node that uses a bitmap of the 32 possible hash fragments at its
+   * level to store only the children that are present. Each child is
+   * either a Leaf or a Node.
+   */
+  static class BitmapNode<K, V> extends Node<K, V> {
+    final int bitmap;
+    final Object[] children;
+
+    BitmapNode(int bitmap, Object[] children) {
+      this.bitmap = bitmap;
+      this.children = children;
+    } // BitmapNode(int, Object[])
+
+    @SuppressWarnings({ "unchecked" })
+    Leaf<K, V> find(Object key, int hash, int shift) {
+      int bit = 1 << ((hash >>> shift) & MASK);
+      if ((this.bitmap & bit) == 0) {
+        return null;
+      } // if
+      Object child = this.children[Integer.bitCount(this.bitmap & (bit - 1))];
+      if (child instanceof Leaf) {
+        Leaf<K, V> leaf = (Leaf<K, V>) child;
+        return leaf.matches(key, hash) ? leaf : null;
+      } // if
+      return ((Node<K, V>) child).find(key, hash, shift + BITS);
+    } // find(Object, int, int)
+
+    @SuppressWarnings({ "unchecked" })
+    Node<K, V> put(Leaf<K, V> leaf, int shift) {
+      int bit = 1 << ((leaf.hash >>> shift) & MASK);
+      int index = Integer.bitCount(this.bitmap & (bit - 1));
+      if ((this.bitmap & bit) == 0) {
+        Object[] newChildren = new Object[this.children.length + 1];
+        System.arraycopy(this.children, 0, newChildren, 0, index);
+        newChildren[index] = leaf;
+        System.arraycopy(this.children, index, newChildren, index + 1,
+            this.children.length - index);
+        return new BitmapNode<K, V>(this.bitmap | bit, newChildren);
+      } // if
+      Object child = this.children[index];
+      Object replacement;
+      if (child instanceof Leaf) {
+        Leaf<K, V> old = (Leaf<K, V>) child;
+        if (old.matches(leaf.key, leaf.hash)) {
+          replacement = leaf;
+        } else {
+          replacement = merge(old, old.hash, leaf, leaf.hash, shift + BITS);
+        } // if/else
+      } else {
+        replacement = ((Node<K, V>) child).put(leaf, shift + BITS);
+      } // if/else
+      Object[] newChildren = this.children.clone();
+      newChildren[index] = replacement;
+      return new BitmapNode<K, V>(this.bitmap, newChildren);
+    } // put(Leaf, int)
+
+    @SuppressWarnings({ "unchecked" })
+    Node<K, V> remove(Object key, int hash, int shift) {
+      int bit = 1 << ((hash >>> shift) & MASK);
+      if ((this.bitmap & bit) == 0) {
+        return this;
+      } // if
+      int index = Integer.bitCount(this.bitmap & (bit - 1));
+      Object child = this.children[index];
+      Object replacement;
+      if (child instanceof Leaf) {
+        if (!((Leaf<K, V>) child).matches(key, hash)) {
+          return this;
+        } // if
+        replacement = null;
+      } else {
+        Node<K, V> oldNode = (Node<K, V>) child;
+        Node<K, V> newNode = oldNode.remove(key, hash, shift + BITS);
+        if (newNode == oldNode) {
+          return this;
+        } // if
+        // Pull a lone leaf up so that the trie does not keep chains of
+        // single-child nodes around.
+        Leaf<K, V> single = (newNode == null) ? null : newNode.singleLeaf();
+        replacement = (single != null) ? single : newNode;
+      } // if/else
+      if (replacement != null) {
+        Object[] newChildren = this.children.clone();
+        newChildren[index] = replacement;
+        return new BitmapNode<K, V>(this.bitmap, newChildren);
+      } // if
+      if (this.children.length == 1) {
+        return null;
+      } // if
+      Object[] newChildren = new Object[this.children.length - 1];
+      System.arraycopy(this.children, 0, newChildren, 0, index);
+      System.arraycopy(this.children, index + 1, newChildren, index,
+          newChildren.length - index);
+      return new BitmapNode<K, V>(this.bitmap & ~bit, newChildren);
+    } // remove(Object, int, int)
+
+    @SuppressWarnings({ "unchecked" })
+    Leaf<K, V> singleLeaf() {
+      if (this.children.length == 1 && this.children[0] instanceof Leaf) {
+        return (Leaf<K, V>) this.children[0];
+      } // if
+      return null;
+    } // singleLeaf()
+
+    @SuppressWarnings({ "unchecked" })
+    int collect(Leaf<K, V>[] out, int pos) {
+      for (Object child : this.children) {
+        if (child instanceof Leaf) {
+          out[pos++] = (Leaf<K, V>) child;
+        } else {
+          pos = ((Node<K, V>) child).collect(out, pos);
+        } // if/else
+      } // for
+      return pos;
+    } // collect(Leaf[], int)
+  } // class BitmapNode
+
+  /**
+   * A node holding leaves whose keys have exactly the same hash.
+   */
+  static class CollisionNode<K, V> extends Node<K, V> {
+    final int hash;
+    final Object[] leaves;
+
+    CollisionNode(int hash, Object[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+    } // CollisionNode(int, Object[])
+
+    @SuppressWarnings({ "unchecked" })
+    Leaf<K, V> find(Object key, int hash, int shift) {
+      for (Object o : this.leaves) {
+        Leaf<K, V> leaf = (Leaf<K, V>) o;
+        if (leaf.matches(key, hash)) {
+          return leaf;
+        } // if
+      } // for
+      return null;
+    } // find(Object, int, int)
+
+    @SuppressWarnings({ "unchecked" })
+    Node<K, V> put(Leaf<K, V> leaf, int shift) {
+      if (leaf.hash != this.hash) {
+        return merge(this, this.hash, leaf, leaf.hash, shift);
+      } // if
+      for (int i = 0; i < this.leaves.length; i++) {
+        if (((Leaf<K, V>) this.leaves[i]).matches(leaf.key, leaf.hash)) {
+          Object[] newLeaves = this.leaves.clone();
+          newLeaves[i] = leaf;
+          return new CollisionNode<K, V>(this.hash, newLeaves);
+        } // if
+      } // for
+      Object[] newLeaves = Arrays.copyOf(this.leaves, this.leaves.length + 1);
+      newLeaves[this.leaves.length] = leaf;
+      return new CollisionNode<K, V>(this.hash, newLeaves);
+    } // put(Leaf, int)
+
+    @SuppressWarnings({ "unchecked" })
+    Node<K, V> remove(Object key, int hash, int shift) {
+      for (int i = 0; i < this.leaves.length; i++) {
+        if (((Leaf<K, V>) this.leaves[i]).matches(key, hash)) {
+          if (this.leaves.length == 1) {
+            return null;
+          } // if
+          Object[] newLeaves = new Object[this.leaves.length - 1];
+          System.arraycopy(this.leaves, 0, newLeaves, 0, i);
+          System.arraycopy(this.leaves, i + 1, newLeaves, i, newLeaves.length - i);
+          return new CollisionNode<K, V>(this.hash, newLeaves);
+        } // if
+      } // for
+      return this;
+    } // remove(Object, int, int)
+
+    @SuppressWarnings({ "unchecked" })
+    Leaf<K, V> singleLeaf() {
+      return (this.leaves.length == 1) ? (Leaf<K, V>) this.leaves[0] : null;
+    } // singleLeaf()
+
+    @SuppressWarnings({ "unchecked" })
+    int collect(Leaf<K, V>[] out, int pos) {
+      for (Object leaf : this.leaves) {
+        out[pos++] = (Leaf<K, V>) leaf;
+      } // for
+      return pos;
+    } // collect(Leaf[], int)
+  } // class CollisionNode
+} // class PersistentAssociativeArray
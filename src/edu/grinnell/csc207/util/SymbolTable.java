@@ -0,0 +1,197 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * A table that interns strings as small integer ids. The first string
+ * interned gets id 0, the next new one id 1, and so on, so ids can be
+ * used as compact keys (e.g., in an IntAssociativeArray) and turned back
+ * into strings with nameOf.
+ */
+public class SymbolTable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of symbols we have room for initially.
+   */
+  static final int DEFAULT_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The interned strings, indexed by id.
+   */
+  String[] names;
+
+  /**
+   * The cached hash of each interned string, indexed by id.
+   */
+  int[] nameHashes;
+
+  /**
+   * The number of interned strings.
+   */
+  int size;
+
+  /**
+   * The hash table. Each slot holds one more than an id, or 0 if empty.
+   */
+  int[] slots;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty symbol table.
+   */
+  public SymbolTable() {
+    this.names = new String[DEFAULT_CAPACITY];
+    this.nameHashes = new int[DEFAULT_CAPACITY];
+    this.size = 0;
+    this.slots = new int[AssociativeArray.tableSizeFor(DEFAULT_CAPACITY,
+        AssociativeArray.DEFAULT_LOAD_FACTOR)];
+  } // SymbolTable()
+
+  // +------------------+--------------------------------------------
+  // | Standard Methods |
+  // +------------------+
+
+  /**
+   * Create a copy of this SymbolTable. Ids mean the same thing in the
+   * copy, and strings interned in one later are not seen by the other.
+   *
+   * @return a new copy of the table
+   */
+  public SymbolTable clone() {
+    SymbolTable copy = new SymbolTable();
+    copy.names = this.names.clone();
+    copy.nameHashes = this.nameHashes.clone();
+    copy.size = this.size;
+    copy.slots = this.slots.clone();
+    return copy;
+  } // clone()
+
+  // +----------------+----------------------------------------------
+  // | Public Methods |
+  // +----------------+
+
+  /**
+   * Get the id of a string, assigning it a new one if it has not been
+   * seen before.
+   *
+   * @param name
+   *   The string to intern.
+   *
+   * @return the id of name.
+   *
+   * @throws NullKeyException
+   *   If name is null.
+   */
+  public int intern(String name) throws NullKeyException {
+    if (name == null) {
+      throw new NullKeyException("Null symbol.");
+    } // if
+    int hash = AssociativeArray.hash(name);
+    int id = probe(name, hash);
+    if (id >= 0) {
+      return id;
+    } // if
+    if (this.size == this.names.length) {
+      this.names = Arrays.copyOf(this.names, this.names.length * 2);
+      this.nameHashes = Arrays.copyOf(this.nameHashes, this.nameHashes.length * 2);
+    } // if
+    if (this.size >= this.slots.length * AssociativeArray.DEFAULT_LOAD_FACTOR) {
+      rehash(this.slots.length * 2);
+    } // if
+    id = this.size++;
+    this.names[id] = name;
+    this.nameHashes[id] = hash;
+    insertSlot(hash, id);
+    return id;
+  } // intern(String)
+
+  /**
+   * Get the id of a string that has already been interned.
+   *
+   * @param name
+   *   The string to look up (possibly null).
+   *
+   * @return the id of name, or -1 if it has not been interned.
+   */
+  public int idOf(String name) {
+    if (name == null) {
+      return -1;
+    } // if
+    return probe(name, AssociativeArray.hash(name));
+  } // idOf(String)
+
+  /**
+   * Get the string with a particular id.
+   *
+   * @param id
+   *   An id returned by intern.
+   *
+   * @return the string with that id.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If no string has that id.
+   */
+  public String nameOf(int id) {
+    if (id < 0 || id >= this.size) {
+      throw new IndexOutOfBoundsException("No symbol with id " + id);
+    } // if
+    return this.names[id];
+  } // nameOf(int)
+
+  /**
+   * Determine how many strings have been interned.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+
+  // +-----------------+---------------------------------------------
+  // | Private Methods |
+  // +-----------------+
+
+  /**
+   * Find the id of a (non-null) string, or -1 if it is not present.
+   */
+  int probe(String name, int hash) {
+    int mask = this.slots.length - 1;
+    for (int i = hash & mask; this.slots[i] != 0; i = (i + 1) & mask) {
+      int id = this.slots[i] - 1;
+      if (this.nameHashes[id] == hash && this.names[id].equals(name)) {
+        return id;
+      } // if
+    } // for
+    return -1;
+  } // probe(String, int)
+
+  /**
+   * Record that the string with the given hash has the given id.
+   */
+  void insertSlot(int hash, int id) {
+    int mask = this.slots.length - 1;
+    int i = hash & mask;
+    while (this.slots[i] != 0) {
+      i = (i + 1) & mask;
+    } // while
+    this.slots[i] = id + 1;
+  } // insertSlot(int, int)
+
+  /**
+   * Rebuild the hash table with the given (power of two) number of slots.
+   */
+  void rehash(int capacity) {
+    this.slots = new int[capacity];
+    for (int id = 0; id < this.size; id++) {
+      insertSlot(this.nameHashes[id], id);
+    } // for
+  } // rehash(int)
+} // class SymbolTable